@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import jetbrains.buildServer.issueTracker.IssueData;
+import jetbrains.buildServer.serverSide.ServerPaths;
+import net.kautler.teamcity.sourceforge.cache.PersistentIssueCache;
+import net.kautler.teamcity.sourceforge.model.DataVehicle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Benchmarks fetching a batch of issues end-to-end against an in-process stub of the SourceForge API,
+ * including chunking, the concurrent searches, the HTTP transport, decoding and classification.
+ * Only the issue cache of TeamCity is bypassed, so that every invocation really fetches the issues.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BatchFetchBenchmark {
+    private static final Pattern TICKET_NUM_PATTERN = Pattern.compile("ticket_num:(\\d+)");
+
+    @Param({"10", "100", "1000"})
+    public int issueCount;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private File dataDirectory;
+    private SourceForgeIssueFetcher fetcher;
+    private ConnectionSettings settings;
+    private List<String> ids;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new SearchHandler(Fixtures.tickets()));
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        System.setProperty("teamcity.sourceforge.baseUrl", "http://localhost:" + server.getAddress().getPort());
+        // measure the fetcher, not the politeness towards SourceForge
+        System.setProperty("teamcity.sourceforge.rateLimit.requestsPerSecond", "0");
+        // really fetch the tickets on each invocation instead of reusing them
+        System.setProperty("teamcity.sourceforge.ticketStore.timeToLiveSeconds", "0");
+
+        dataDirectory = File.createTempFile("sourceforge-benchmark", "");
+        if (!dataDirectory.delete() || !dataDirectory.mkdir()) {
+            throw new IOException(String.format("Could not create data directory '%s'", dataDirectory));
+        }
+        ServerPaths serverPaths = new ServerPaths(dataDirectory.getAbsolutePath());
+        // the issue cache of TeamCity is bypassed by fetchBatch, so no cache util is needed
+        fetcher = new SourceForgeIssueFetcher(null, new PersistentIssueCache(serverPaths), serverPaths);
+        settings = fetcher.getConnectionSettings(new DataVehicle("bench", "bugs", "status:closed*", "labels:type_feature",
+                                                                 "labels:type_(.+):bug", "custom:_priority", "labels:").toJson());
+
+        ids = new ArrayList<String>(issueCount);
+        for (int i = 1; i <= issueCount; i++) {
+            ids.add(String.valueOf(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fetcher.dispose();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        System.clearProperty("teamcity.sourceforge.baseUrl");
+        System.clearProperty("teamcity.sourceforge.rateLimit.requestsPerSecond");
+        System.clearProperty("teamcity.sourceforge.ticketStore.timeToLiveSeconds");
+        delete(dataDirectory);
+    }
+
+    @Benchmark
+    public List<IssueData> fetchBatch() {
+        return fetcher.fetchBatch(settings, ids);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Answers every search with the recorded tickets whose ticket numbers are contained in the query.
+     * The rest of the query is ignored, so all found tickets also match the classification searches.
+     */
+    private static class SearchHandler implements HttpHandler {
+        private final Map<String, JsonElement> tickets;
+
+        SearchHandler(Map<String, JsonElement> tickets) {
+            this.tickets = tickets;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                String query = exchange.getRequestURI().getRawQuery();
+                JsonArray foundTickets = new JsonArray();
+                if (query != null) {
+                    Matcher matcher = TICKET_NUM_PATTERN.matcher(URLDecoder.decode(query, "UTF-8"));
+                    while (matcher.find()) {
+                        JsonElement ticket = tickets.get(matcher.group(1));
+                        if (ticket != null) {
+                            foundTickets.add(ticket);
+                        }
+                    }
+                }
+                byte[] body = Fixtures.searchResult(foundTickets);
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                try {
+                    output.write(body);
+                } finally {
+                    output.close();
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import net.kautler.teamcity.sourceforge.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static net.kautler.teamcity.sourceforge.model.TicketStreamReader.readTicketWrapper;
+
+/**
+ * Benchmarks the extraction of custom values from a ticket for all kinds of custom value field specifications.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CustomValueExtractorBenchmark {
+    @Param({"bug", "labels:", "labels:component_.+", "labels:type_(.+):bug", "custom:_priority", "custom:_severity:normal"})
+    public String specification;
+    private CustomValueExtractor extractor;
+    private Ticket ticket;
+
+    @Setup
+    public void setUp() throws IOException {
+        extractor = CustomValueExtractor.forSpecification(specification);
+        ticket = readTicketWrapper(new ByteArrayInputStream(Fixtures.read("ticket.json")));
+    }
+
+    @Benchmark
+    public String extract() {
+        return extractor.extract(ticket);
+    }
+
+    @Benchmark
+    public String lookUpAndExtract() {
+        return CustomValueExtractor.forSpecification(specification).extract(ticket);
+    }
+}
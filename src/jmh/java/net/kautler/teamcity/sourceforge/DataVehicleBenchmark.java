@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import net.kautler.teamcity.sourceforge.model.DataVehicle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Benchmarks the encoding of data vehicles and the accessors that decode them, which are called for every issue lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DataVehicleBenchmark {
+    private DataVehicle dataVehicle;
+    private String dataVehicleJson;
+
+    @Setup
+    public void setUp() {
+        dataVehicle = new DataVehicle("bench", "bugs", "status:closed*", "labels:type_feature",
+                                      "labels:type_(.+):bug", "custom:_priority", "labels:");
+        dataVehicleJson = dataVehicle.toJson();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return dataVehicle.toJson();
+    }
+
+    @Benchmark
+    public String getProject() {
+        return DataVehicle.getProject(dataVehicleJson);
+    }
+
+    @Benchmark
+    public String getResolvedQuery() {
+        return DataVehicle.getResolvedQuery(dataVehicleJson);
+    }
+
+    @Benchmark
+    public String getSeverity() {
+        return DataVehicle.getSeverity(dataVehicleJson);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Access to the recorded SourceForge API responses that are used as input for the benchmarks.
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    /**
+     * Reads the fixture with the specified name completely.
+     *
+     * @param name the name of the fixture relative to this class
+     * @return the content of the fixture
+     * @throws IOException if the fixture cannot be read
+     */
+    @NotNull
+    static byte[] read(@NotNull String name) throws IOException {
+        InputStream input = Fixtures.class.getResourceAsStream(name);
+        if (input == null) {
+            throw new IOException(String.format("Fixture '%s' not found", name));
+        }
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns the recorded tickets of the search result fixture by their ticket number.
+     *
+     * @return the recorded tickets in the order of the fixture
+     * @throws IOException if the fixture cannot be read
+     */
+    @NotNull
+    static Map<String, JsonElement> tickets() throws IOException {
+        JsonObject searchResult = new JsonParser().parse(new InputStreamReader(Fixtures.class.getResourceAsStream("search-result.json"), "UTF-8")).getAsJsonObject();
+        Map<String, JsonElement> result = new LinkedHashMap<String, JsonElement>();
+        for (JsonElement ticket : searchResult.getAsJsonArray("tickets")) {
+            result.put(ticket.getAsJsonObject().get("ticket_num").getAsString(), ticket);
+        }
+        return result;
+    }
+
+    /**
+     * Builds a search result with the first tickets of the search result fixture.
+     *
+     * @param ticketCount the amount of tickets to include
+     * @return the {@code UTF-8} encoded {@code JSON} representation of the search result
+     * @throws IOException if the fixture cannot be read
+     */
+    @NotNull
+    static byte[] searchResult(int ticketCount) throws IOException {
+        JsonArray tickets = new JsonArray();
+        for (JsonElement ticket : tickets().values()) {
+            if (tickets.size() == ticketCount) {
+                break;
+            }
+            tickets.add(ticket);
+        }
+        return searchResult(tickets);
+    }
+
+    /**
+     * Builds a search result with the specified tickets like SourceForge does.
+     *
+     * @param tickets the tickets to include
+     * @return the {@code UTF-8} encoded {@code JSON} representation of the search result
+     * @throws IOException if encoding fails
+     */
+    @NotNull
+    static byte[] searchResult(@NotNull JsonArray tickets) throws IOException {
+        JsonObject searchResult = new JsonObject();
+        searchResult.addProperty("count", tickets.size());
+        searchResult.addProperty("limit", tickets.size());
+        searchResult.addProperty("page", 0);
+        searchResult.add("tickets", tickets);
+        return searchResult.toString().getBytes("UTF-8");
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import com.google.gson.Gson;
+import net.kautler.teamcity.sourceforge.model.SearchResult;
+import net.kautler.teamcity.sourceforge.model.Ticket;
+import net.kautler.teamcity.sourceforge.model.TicketStreamReader.TicketHandler;
+import net.kautler.teamcity.sourceforge.model.TicketWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static net.kautler.teamcity.sourceforge.model.TicketStreamReader.readSearchResult;
+import static net.kautler.teamcity.sourceforge.model.TicketStreamReader.readTicketWrapper;
+
+/**
+ * Benchmarks the decoding of the ticket and search responses of SourceForge,
+ * with the streaming reader that is used by the fetcher and with plain Gson data binding for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ModelDecodingBenchmark {
+    private static final Gson GSON = new Gson();
+    private byte[] ticketWrapper;
+
+    /**
+     * A search result payload with a parameterized amount of tickets.
+     */
+    @State(Scope.Benchmark)
+    public static class SearchResultPayload {
+        @Param({"10", "100", "1000"})
+        public int ticketCount;
+        private byte[] searchResult;
+
+        @Setup
+        public void setUp() throws IOException {
+            searchResult = Fixtures.searchResult(ticketCount);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        ticketWrapper = Fixtures.read("ticket.json");
+    }
+
+    @Benchmark
+    public Ticket streamTicketWrapper() throws IOException {
+        return readTicketWrapper(new ByteArrayInputStream(ticketWrapper));
+    }
+
+    @Benchmark
+    public TicketWrapper bindTicketWrapper() throws IOException {
+        return GSON.fromJson(new InputStreamReader(new ByteArrayInputStream(ticketWrapper), "UTF-8"), TicketWrapper.class);
+    }
+
+    @Benchmark
+    public int streamSearchResult(SearchResultPayload payload, final Blackhole blackhole) throws IOException {
+        return readSearchResult(new ByteArrayInputStream(payload.searchResult), new TicketHandler() {
+            @Override
+            public void handle(Ticket ticket) {
+                blackhole.consume(ticket);
+            }
+        });
+    }
+
+    @Benchmark
+    public SearchResult bindSearchResult(SearchResultPayload payload) throws IOException {
+        return GSON.fromJson(new InputStreamReader(new ByteArrayInputStream(payload.searchResult), "UTF-8"), SearchResult.class);
+    }
+}
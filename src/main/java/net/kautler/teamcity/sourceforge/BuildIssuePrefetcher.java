@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.DiscardPolicy;
+
+import jetbrains.buildServer.issueTracker.IssueProvider;
+import jetbrains.buildServer.issueTracker.IssueProvidersManager;
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.SBuildType;
+import jetbrains.buildServer.serverSide.SProject;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.util.EventDispatcher;
+import jetbrains.buildServer.vcs.SVcsModification;
+import net.kautler.teamcity.sourceforge.cache.BoundedCache;
+import org.jetbrains.annotations.NotNull;
+
+import static java.lang.Boolean.TRUE;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Prefetches the issues mentioned in the changes of a build when the build starts or its changes are loaded,
+ * so that the pages showing the build render from a warm issue cache instead of waiting for SourceForge.
+ * <p/>
+ * The commit messages of all changes of the build are scanned once for the issue IDs of all SourceForge connections
+ * of the project of the build and its parent projects, and the found issues are fetched in the background
+ * through the batch fetching of each connection.
+ * If prefetching cannot keep up with the started builds, the prefetching of further builds is skipped.
+ */
+public class BuildIssuePrefetcher extends BuildServerAdapter {
+    private static final String ENABLED_PROPERTY = "teamcity.sourceforge.prefetch.enabled";
+
+    private final EventDispatcher<BuildServerListener> eventDispatcher;
+    private final IssueProvidersManager issueProvidersManager;
+    private final ThreadPoolExecutor executor;
+    private final BoundedCache<Long, Boolean> prefetchedBuilds = new BoundedCache<Long, Boolean>(1000, 3600 * 1000L);
+
+    public BuildIssuePrefetcher(@NotNull EventDispatcher<BuildServerListener> eventDispatcher,
+                                @NotNull IssueProvidersManager issueProvidersManager) {
+        this.eventDispatcher = eventDispatcher;
+        this.issueProvidersManager = issueProvidersManager;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(100),
+                                                             new DaemonThreadFactory("SourceForge issue prefetcher"),
+                                                             new DiscardPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+        eventDispatcher.addListener(this);
+    }
+
+    /**
+     * Stops listening for builds and aborts the running prefetches.
+     */
+    public void dispose() {
+        eventDispatcher.removeListener(this);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void buildStarted(@NotNull SRunningBuild build) {
+        prefetchAsynchronously(build);
+    }
+
+    @Override
+    public void changesLoaded(@NotNull SRunningBuild build) {
+        prefetchAsynchronously(build);
+    }
+
+    /**
+     * Prefetches the issues mentioned in the changes of the specified build in the background, if prefetching is enabled.
+     *
+     * @param build the build to prefetch the issues for
+     */
+    private void prefetchAsynchronously(@NotNull final SRunningBuild build) {
+        if (!TeamCityProperties.getBooleanOrTrue(ENABLED_PROPERTY)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                prefetch(build);
+            }
+        });
+    }
+
+    /**
+     * Prefetches the issues mentioned in the changes of the specified build.
+     * Builds whose issues were prefetched already, are skipped, as both the build start and the loading
+     * of the changes trigger the prefetching. Builds without changes are not remembered, as their changes
+     * might just not be loaded yet.
+     *
+     * @param build the build to prefetch the issues for
+     */
+    private void prefetch(@NotNull SRunningBuild build) {
+        if (prefetchedBuilds.get(build.getBuildId()) != null) {
+            return;
+        }
+        List<SourceForgeIssueProvider> providers = getProviders(build);
+        if (providers.isEmpty()) {
+            return;
+        }
+        List<SVcsModification> changes = build.getContainingChanges();
+        if (changes.isEmpty()) {
+            return;
+        }
+        prefetchedBuilds.put(build.getBuildId(), TRUE);
+
+        // collect the IDs of all changes per provider, so that each connection is only asked once
+        Map<SourceForgeIssueProvider, Set<String>> issueIds = new LinkedHashMap<SourceForgeIssueProvider, Set<String>>();
+        for (SVcsModification change : changes) {
+            String description = change.getDescription();
+            if (description == null) {
+                continue;
+            }
+            for (Entry<SourceForgeIssueProvider, List<String>> changeIssueIds : SourceForgeIssueProvider.findIssueIds(providers, description).entrySet()) {
+                if (changeIssueIds.getValue().isEmpty()) {
+                    continue;
+                }
+                Set<String> providerIssueIds = issueIds.get(changeIssueIds.getKey());
+                if (providerIssueIds == null) {
+                    providerIssueIds = new LinkedHashSet<String>();
+                    issueIds.put(changeIssueIds.getKey(), providerIssueIds);
+                }
+                providerIssueIds.addAll(changeIssueIds.getValue());
+            }
+        }
+
+        for (Entry<SourceForgeIssueProvider, Set<String>> providerIssueIds : issueIds.entrySet()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                // this goes through the issue cache of TeamCity, which is what the pages render from
+                providerIssueIds.getKey().findIssuesByIds(providerIssueIds.getValue());
+            } catch (RuntimeException e) {
+                // prefetching is best effort, the issues are fetched again when they are actually needed
+            }
+        }
+    }
+
+    /**
+     * Returns the SourceForge issue providers that are used for the specified build,
+     * that is those of the project of the build and of its parent projects.
+     *
+     * @param build the build to get the issue providers for
+     * @return the SourceForge issue providers of the build
+     */
+    @NotNull
+    private List<SourceForgeIssueProvider> getProviders(@NotNull SRunningBuild build) {
+        SBuildType buildType = build.getBuildType();
+        if (buildType == null) {
+            return emptyList();
+        }
+        List<SourceForgeIssueProvider> result = new ArrayList<SourceForgeIssueProvider>();
+        for (SProject project = buildType.getProject(); project != null; project = project.getParentProject()) {
+            for (IssueProvider provider : issueProvidersManager.getOwnProviders(project).values()) {
+                if (provider instanceof SourceForgeIssueProvider) {
+                    result.add((SourceForgeIssueProvider) provider);
+                }
+            }
+        }
+        return result;
+    }
+}
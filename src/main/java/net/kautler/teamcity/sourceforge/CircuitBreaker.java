@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import jetbrains.buildServer.issueTracker.errors.RetrieveIssueException;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * A circuit breaker for the requests to the SourceForge API.
+ * <p/>
+ * After the configured amount of failed requests in a row the circuit opens and all requests fail fast
+ * for the configured cool-down time instead of waiting for a timeout each. After the cool-down one probe
+ * request is let through. If it succeeds the circuit closes again, otherwise the next cool-down starts.
+ */
+class CircuitBreaker {
+    private static final String FAILURE_THRESHOLD_PROPERTY = "teamcity.sourceforge.circuitBreaker.failureThreshold";
+    private static final String COOL_DOWN_PROPERTY = "teamcity.sourceforge.circuitBreaker.coolDownSeconds";
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * Checks whether a request may be sent soon, without becoming the probe request.
+     * This lets requests fail fast before they wait for the rate limiter, the probe request is only chosen
+     * by {@link #acquire()} right before a request is sent, so that it cannot get stuck while waiting.
+     *
+     * @throws CircuitOpenException if the circuit is open and its cool-down is not over or another request is probing
+     */
+    synchronized void check() {
+        switch (state) {
+            case CLOSED:
+                return;
+
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= getCoolDown()) {
+                    return;
+                }
+                throw new CircuitOpenException();
+
+            default:
+                throw new CircuitOpenException();
+        }
+    }
+
+    /**
+     * Checks whether a request may be sent.
+     * If the cool-down of the open circuit is over, the calling request becomes the probe request.
+     *
+     * @throws CircuitOpenException if the circuit is open or another request is probing
+     */
+    synchronized void acquire() {
+        switch (state) {
+            case CLOSED:
+                return;
+
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= getCoolDown()) {
+                    state = State.HALF_OPEN;
+                    return;
+                }
+                throw new CircuitOpenException();
+
+            default:
+                throw new CircuitOpenException();
+        }
+    }
+
+    /**
+     * Records that a request reached the server and was answered without server error, which closes the circuit.
+     */
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records that a request failed because the server is unreachable, too slow or failing,
+     * which opens the circuit if it is probing or the configured amount of failures in a row is reached.
+     */
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        int failureThreshold = TeamCityProperties.getInteger(FAILURE_THRESHOLD_PROPERTY, 5);
+        if ((state == State.HALF_OPEN) || ((failureThreshold > 0) && (consecutiveFailures >= failureThreshold))) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Returns whether requests currently fail fast.
+     *
+     * @return whether the circuit is open or probing
+     */
+    synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    private static long getCoolDown() {
+        return SECONDS.toMillis(TeamCityProperties.getInteger(COOL_DOWN_PROPERTY, 30));
+    }
+
+    /**
+     * The state of the circuit.
+     */
+    private enum State {
+        /**
+         * All requests are sent.
+         */
+        CLOSED,
+
+        /**
+         * All requests fail fast.
+         */
+        OPEN,
+
+        /**
+         * One probe request is sent, all other requests fail fast.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Thrown instead of sending a request while the circuit is open.
+     */
+    static class CircuitOpenException extends RetrieveIssueException {
+        CircuitOpenException() {
+            super("SourceForge is currently unavailable, requests are paused");
+        }
+    }
+}
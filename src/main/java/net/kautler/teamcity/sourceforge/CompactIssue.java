@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import jetbrains.buildServer.issueTracker.IssueData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static jetbrains.buildServer.issueTracker.IssueData.PRIORITY_FIELD;
+import static jetbrains.buildServer.issueTracker.IssueData.SEVERITY_FIELD;
+import static jetbrains.buildServer.issueTracker.IssueData.STATE_FIELD;
+import static jetbrains.buildServer.issueTracker.IssueData.SUMMARY_FIELD;
+import static jetbrains.buildServer.issueTracker.IssueData.TYPE_FIELD;
+import static net.kautler.teamcity.sourceforge.SourceForgeIssueFetcher.LABELS_FIELD;
+import static net.kautler.teamcity.sourceforge.SourceForgeIssueFetcher.VOTES_FIELD;
+import static net.kautler.teamcity.sourceforge.cache.Interner.intern;
+
+/**
+ * A compact record of an issue that is converted into a TeamCity {@code IssueData} without copying its fields.
+ * <p/>
+ * The fields are kept in fixed slots instead of a hash map per issue, the values that repeat across issues like
+ * the state, type, priority, severity and labels are interned, and the joined labels are shared with the ticket the issue
+ * was projected from, so that all connections to the same ticket tool join them only once.
+ * The issue data returned by {@link #toIssueData()} is backed by a read-only map view of this record.
+ */
+class CompactIssue implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String[] FIELD_NAMES = {
+            TYPE_FIELD, SUMMARY_FIELD, STATE_FIELD, PRIORITY_FIELD, SEVERITY_FIELD, VOTES_FIELD, LABELS_FIELD
+    };
+
+    private final String id;
+    private final String summary;
+    private final String state;
+    private final String type;
+    private final String priority;
+    private final String severity;
+    private final int votes;
+    private final String labels;
+    private final boolean resolved;
+    private final boolean featureRequest;
+    private final String url;
+
+    CompactIssue(@NotNull String id, @Nullable String summary, @Nullable String state, @Nullable String type, @Nullable String priority,
+                 @Nullable String severity, int votes, @NotNull String labels, boolean resolved, boolean featureRequest,
+                 @NotNull String url) {
+        this.id = id;
+        this.summary = summary;
+        this.state = intern(state);
+        this.type = intern(type);
+        this.priority = intern(priority);
+        this.severity = intern(severity);
+        this.votes = votes;
+        this.labels = intern(labels);
+        this.resolved = resolved;
+        this.featureRequest = featureRequest;
+        this.url = url;
+    }
+
+    /**
+     * Converts this record into a TeamCity issue.
+     *
+     * @return the issue whose fields are backed by this record
+     */
+    @NotNull
+    IssueData toIssueData() {
+        return new IssueData(id, new Fields(this), resolved, featureRequest, url);
+    }
+
+    /**
+     * Returns the value of the field in the specified slot.
+     *
+     * @param slot the index of the field in {@link #FIELD_NAMES}
+     * @return the value of the field
+     */
+    @Nullable
+    private String getField(int slot) {
+        switch (slot) {
+            case 0:
+                return type;
+            case 1:
+                return summary;
+            case 2:
+                return state;
+            case 3:
+                return priority;
+            case 4:
+                return severity;
+            case 5:
+                return String.valueOf(votes);
+            case 6:
+                return labels;
+            default:
+                throw new AssertionError(String.format("Unknown slot %d", slot));
+        }
+    }
+
+    /**
+     * Returns the slot of the field with the specified name.
+     *
+     * @param fieldName the name of the field
+     * @return the slot of the field, or {@code -1} if there is no field with that name
+     */
+    private static int getSlot(@Nullable Object fieldName) {
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            if (FIELD_NAMES[i].equals(fieldName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A read-only map view of the fields of a compact issue, as {@code IssueData} expects its fields as map.
+     */
+    private static class Fields extends AbstractMap<String, String> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final CompactIssue issue;
+
+        Fields(@NotNull CompactIssue issue) {
+            this.issue = issue;
+        }
+
+        @Override
+        public int size() {
+            return FIELD_NAMES.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return getSlot(key) != -1;
+        }
+
+        @Override
+        public String get(Object key) {
+            int slot = getSlot(key);
+            return slot == -1 ? null : issue.getField(slot);
+        }
+
+        @NotNull
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public int size() {
+                    return FIELD_NAMES.length;
+                }
+
+                @NotNull
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        private int slot;
+
+                        @Override
+                        public boolean hasNext() {
+                            return slot < FIELD_NAMES.length;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, String> entry = new SimpleImmutableEntry<String, String>(FIELD_NAMES[slot], issue.getField(slot));
+                            slot++;
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import net.kautler.teamcity.sourceforge.model.DataVehicle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static java.lang.String.format;
+import static net.kautler.teamcity.sourceforge.SourceForgeIssueFetcher.encodeQuery;
+
+/**
+ * The settings of one issue tracker connection, resolved once from the {@code JSON} representation of its data vehicle.
+ * <p/>
+ * All values that are needed per ticket, like the compiled custom value extractors and the URL prefixes,
+ * are prepared when the settings are created, so that they can be used without further decoding or parsing.
+ */
+class ConnectionSettings {
+    private final String dataVehicleJson;
+    private final String connectionId;
+    private final String project;
+    private final String ticketTool;
+    private final String resolvedQuery;
+    private final String featureRequestQuery;
+    private final CustomValueExtractor typeExtractor;
+    private final CustomValueExtractor priorityExtractor;
+    private final CustomValueExtractor severityExtractor;
+    private final String restTicketToolUrl;
+    private final String browseTicketToolUrl;
+    private final String searchUrlPrefix;
+
+    /**
+     * Resolves the settings from the {@code JSON} representation of a data vehicle.
+     *
+     * @param dataVehicleJson the {@code JSON} representation of the data vehicle transporting the configuration data
+     * @param fetcher         the fetcher that is used to construct the URLs
+     */
+    ConnectionSettings(@NotNull String dataVehicleJson, @NotNull SourceForgeIssueFetcher fetcher) {
+        this.dataVehicleJson = dataVehicleJson;
+        connectionId = getConnectionId(dataVehicleJson);
+        project = DataVehicle.getProject(dataVehicleJson);
+        ticketTool = DataVehicle.getTicketTool(dataVehicleJson);
+        resolvedQuery = DataVehicle.getResolvedQuery(dataVehicleJson);
+        featureRequestQuery = DataVehicle.getFeatureRequestQuery(dataVehicleJson);
+        typeExtractor = CustomValueExtractor.forSpecification(DataVehicle.getType(dataVehicleJson));
+        priorityExtractor = CustomValueExtractor.forSpecification(DataVehicle.getPriority(dataVehicleJson));
+        severityExtractor = CustomValueExtractor.forSpecification(DataVehicle.getSeverity(dataVehicleJson));
+        restTicketToolUrl = fetcher.getTicketToolUrl(project, ticketTool, true);
+        browseTicketToolUrl = fetcher.getTicketToolUrl(project, ticketTool, false);
+        searchUrlPrefix = format("%s/search?q=", restTicketToolUrl);
+    }
+
+    /**
+     * Derives a stable identity of a connection from the {@code JSON} representation of its data vehicle,
+     * that is the same after a restart of the server.
+     *
+     * @param dataVehicleJson the {@code JSON} representation of the data vehicle transporting the configuration data
+     * @return the identity of the connection
+     */
+    @NotNull
+    private static String getConnectionId(@NotNull String dataVehicleJson) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(dataVehicleJson.getBytes("UTF-8"));
+            return format("%040x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-1 should be supported on all JVMs", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError("UTF-8 should be supported on all JVMs", e);
+        }
+    }
+
+    /**
+     * Returns the stable identity of this connection, that is derived from its data vehicle.
+     *
+     * @return the identity of this connection
+     */
+    @NotNull
+    String getConnectionId() {
+        return connectionId;
+    }
+
+    @NotNull
+    String getDataVehicleJson() {
+        return dataVehicleJson;
+    }
+
+    @NotNull
+    String getProject() {
+        return project;
+    }
+
+    @NotNull
+    String getTicketTool() {
+        return ticketTool;
+    }
+
+    @Nullable
+    String getResolvedQuery() {
+        return resolvedQuery;
+    }
+
+    @Nullable
+    String getFeatureRequestQuery() {
+        return featureRequestQuery;
+    }
+
+    @NotNull
+    CustomValueExtractor getTypeExtractor() {
+        return typeExtractor;
+    }
+
+    @NotNull
+    CustomValueExtractor getPriorityExtractor() {
+        return priorityExtractor;
+    }
+
+    @NotNull
+    CustomValueExtractor getSeverityExtractor() {
+        return severityExtractor;
+    }
+
+    /**
+     * Constructs the URL to the issue with the specified ID, either as browsing variant, or as API variant.
+     *
+     * @param id   the ID of the issue to construct the URL for
+     * @param rest whether to build the browsing variant ({@code false}) or the API variant ({@code true})
+     * @return the constructed URL as string
+     */
+    @NotNull
+    String getIssueUrl(@NotNull String id, boolean rest) {
+        return (rest ? restTicketToolUrl : browseTicketToolUrl) + '/' + id;
+    }
+
+    /**
+     * Returns the key under which the issue with the specified ID is cached for this connection.
+     * Issues are projected with the queries and custom value specifications of a connection,
+     * so unlike raw tickets they must not be shared with other connections to the same ticket tool.
+     *
+     * @param id the ID of the issue to construct the key for
+     * @return the connection specific key of the issue
+     */
+    @NotNull
+    String getIssueKey(@NotNull String id) {
+        return getIssueUrl(id, true) + '#' + connectionId;
+    }
+
+    /**
+     * Constructs the URL to the search through the API with the specified search query,
+     * requesting at most the specified amount of tickets in the search result.
+     * The search query is automatically URL encoded and must not be already encoded.
+     *
+     * @param query the search query to constuct the URL for
+     * @param limit the maximum amount of tickets that should be returned by the search
+     * @return the constructed URL as string
+     */
+    @NotNull
+    String getSearchUrl(@NotNull String query, int limit) {
+        return searchUrlPrefix + encodeQuery(query) + "&limit=" + limit;
+    }
+}
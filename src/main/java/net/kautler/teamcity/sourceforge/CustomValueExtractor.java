@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.kautler.teamcity.sourceforge.cache.BoundedCache;
+import net.kautler.teamcity.sourceforge.cache.CacheStatistics;
+import net.kautler.teamcity.sourceforge.model.DataVehicle;
+import net.kautler.teamcity.sourceforge.model.Ticket;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static net.kautler.teamcity.sourceforge.SourceForgeIssueProvider.safeCompilePattern;
+import static org.apache.commons.lang.StringUtils.isEmpty;
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+import static org.apache.commons.lang.StringUtils.join;
+
+/**
+ * Retrieves the custom value for some field from tickets according to a custom value field specification.
+ * <p/>
+ * Allowed syntax for the field specification:
+ * <p><dl>
+ * <dt><b>labels:&lt;regex&gt;[:&lt;default&gt;]</b></dt>
+ * <dd>
+ * The value is defined by one or more labels.<br/>
+ * If multiple labels are found, they are joined together with commas.<br/>
+ * If no label is found, the default value is used, if one is defined.<br/>
+ * The regex must not contain any colons. If you need to match a colon, use '\u005c003a' instead.
+ * <ul>
+ * <li>If no regex is given, all labels are used, e.&nbsp;g. 'labels:' or 'labels::bug'</li>
+ * <li>
+ * If a regex without group is given, all labels matching the regex are used completely,
+ * e.&nbsp;g. 'labels:.+_bug' or 'labels:.+_bug:general_bug'<bs:help file="Integrating+TeamCity+with+Issue+Tracker"/>
+ * </li>
+ * <li>
+ * If a regex with groups is given, all labels matching the regex are used, but only their first group,
+ * e.&nbsp;g. 'labels:type_(.+)' or 'labels:type_(.+):bug'<bs:help file="Integrating+TeamCity+with+Issue+Tracker"/>
+ * </li>
+ * </ul>
+ * </dd>
+ * <dt><b>custom:&lt;custom field name&gt;[:&lt;default&gt;]</b></dt>
+ * <dd>
+ * The value is defined by the value of a custom field, e.&nbsp;g. 'custom:_type' or 'custom:_type:bug'<br/>
+ * If the custom field is not found, not set or empty, the default value is used, if one is defined.
+ * </dd>
+ * <dt><b>&lt;fixed string&gt;</b></dt>
+ * <dd>All issues have the same value defined here, e.&nbsp;g. 'bug'</dd>
+ * </dl>
+ * <p/>
+ * A specification is compiled only once into an immutable and thread-safe extractor
+ * that is shared by all connections using the same specification as long as it stays in the cache.
+ */
+abstract class CustomValueExtractor {
+    private static final BoundedCache<String, CustomValueExtractor> cache = DataVehicle.createConnectionCache();
+    private static final CustomValueExtractor NULL_EXTRACTOR = new FixedValueExtractor(null);
+
+    /**
+     * Returns the extractor for the specified custom value field specification.
+     *
+     * @param fieldValue the custom value field specification
+     * @return the compiled extractor
+     */
+    @NotNull
+    static CustomValueExtractor forSpecification(@Nullable String fieldValue) {
+        if (fieldValue == null) {
+            return NULL_EXTRACTOR;
+        }
+        CustomValueExtractor extractor = cache.get(fieldValue);
+        if (extractor == null) {
+            extractor = cache.putIfAbsent(fieldValue, compile(fieldValue));
+        }
+        return extractor;
+    }
+
+    /**
+     * Returns the statistics of the cache of compiled extractors.
+     *
+     * @return the statistics of the cache of compiled extractors
+     */
+    @NotNull
+    static CacheStatistics getCacheStatistics() {
+        return cache;
+    }
+
+    /**
+     * Compiles the specified custom value field specification into an extractor.
+     *
+     * @param fieldValue the custom value field specification
+     * @return the compiled extractor
+     */
+    @NotNull
+    private static CustomValueExtractor compile(@NotNull String fieldValue) {
+        String[] fieldValueParts = fieldValue.split(":", 3);
+
+        // if there is no colon, this is the fixed string case, so simple return the specification
+        if (fieldValueParts.length == 1) {
+            return new FixedValueExtractor(fieldValue);
+        }
+
+        String defaultValue = fieldValueParts.length > 2 ? fieldValueParts[2] : null;
+        if (fieldValueParts[0].equals("labels")) {
+            String labelRegex = fieldValueParts[1];
+            if (isEmpty(labelRegex)) {
+                return new AllLabelsExtractor(defaultValue);
+            }
+            return new MatchingLabelsExtractor(safeCompilePattern(labelRegex), defaultValue);
+        } else if (fieldValueParts[0].equals("custom")) {
+            return new CustomFieldExtractor(fieldValueParts[1], defaultValue);
+        }
+
+        // there is a colon present, but none of the defined prefixes matches,
+        // so we are in the fixed string case again, simply return specification
+        return new FixedValueExtractor(fieldValue);
+    }
+
+    /**
+     * Retrieves the custom value from the specified ticket.
+     *
+     * @param ticket the ticket to retrieve the data from
+     * @return the retrieved custom value
+     */
+    @Nullable
+    abstract String extract(@NotNull Ticket ticket);
+
+    /**
+     * Extracts the same fixed value for all tickets.
+     */
+    private static class FixedValueExtractor extends CustomValueExtractor {
+        private final String value;
+
+        FixedValueExtractor(@Nullable String value) {
+            this.value = value;
+        }
+
+        @Nullable
+        @Override
+        String extract(@NotNull Ticket ticket) {
+            return value;
+        }
+    }
+
+    /**
+     * Extracts all labels of a ticket joined together with commas.
+     */
+    private static class AllLabelsExtractor extends CustomValueExtractor {
+        private final String defaultValue;
+
+        AllLabelsExtractor(@Nullable String defaultValue) {
+            this.defaultValue = defaultValue;
+        }
+
+        @Nullable
+        @Override
+        String extract(@NotNull Ticket ticket) {
+            String labels = ticket.getJoinedLabels();
+            if (isNotBlank(labels)) {
+                return labels;
+            }
+            // if there are no labels present, return the default value if specified
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Extracts the labels of a ticket that match a regex, or their first group, joined together with commas.
+     */
+    private static class MatchingLabelsExtractor extends CustomValueExtractor {
+        private final Pattern labelPattern;
+        private final boolean useFirstGroup;
+        private final String defaultValue;
+
+        MatchingLabelsExtractor(@NotNull Pattern labelPattern, @Nullable String defaultValue) {
+            this.labelPattern = labelPattern;
+            this.useFirstGroup = labelPattern.matcher("").groupCount() > 0;
+            this.defaultValue = defaultValue;
+        }
+
+        @Nullable
+        @Override
+        String extract(@NotNull Ticket ticket) {
+            List<String> matchingLabels = new ArrayList<String>();
+            for (String label : ticket.getLabels()) {
+                Matcher labelMatcher = labelPattern.matcher(label);
+                if (labelMatcher.matches()) {
+                    // use the first group if present, or the whole match otherwise
+                    matchingLabels.add(useFirstGroup ? labelMatcher.group(1) : labelMatcher.group());
+                }
+            }
+            // join the matched labels together
+            String labels = join(matchingLabels.iterator(), ", ");
+            if (isNotBlank(labels)) {
+                return labels;
+            }
+            // if no labels were found, return the default value if specified
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Extracts the value of a custom field of a ticket.
+     */
+    private static class CustomFieldExtractor extends CustomValueExtractor {
+        private final String customFieldName;
+        private final String defaultValue;
+
+        CustomFieldExtractor(@NotNull String customFieldName, @Nullable String defaultValue) {
+            this.customFieldName = customFieldName;
+            this.defaultValue = defaultValue;
+        }
+
+        @Nullable
+        @Override
+        String extract(@NotNull Ticket ticket) {
+            String customFieldValue = ticket.getCustomFields().get(customFieldName);
+            if (isNotBlank(customFieldValue)) {
+                return customFieldValue;
+            }
+            // if the custom field is not found, not set or empty, return the default value if specified
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import jetbrains.buildServer.issueTracker.errors.NotFoundException;
+import jetbrains.buildServer.issueTracker.errors.RetrieveIssueException;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import net.kautler.teamcity.sourceforge.metrics.Endpoint;
+import net.kautler.teamcity.sourceforge.metrics.FetcherMetrics;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.DateParseException;
+import org.apache.commons.httpclient.util.DateUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.httpclient.HttpStatus.SC_INTERNAL_SERVER_ERROR;
+import static org.apache.commons.httpclient.HttpStatus.SC_NOT_FOUND;
+import static org.apache.commons.httpclient.HttpStatus.SC_NOT_MODIFIED;
+import static org.apache.commons.httpclient.HttpStatus.SC_OK;
+import static org.apache.commons.lang.StringUtils.isBlank;
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+import static org.apache.commons.lang.StringUtils.isNumeric;
+
+/**
+ * The HTTP transport used for all requests to the SourceForge API.
+ * <p/>
+ * The transport keeps a bounded pool of keep-alive connections, requests gzip compressed responses and always
+ * closes the responses and returns their connections to the pool, as the response bodies are only handed to a
+ * {@link ResponseHandler} while the request is executed. The connect and read timeouts are configurable.
+ * <p/>
+ * All requests pass the {@link RateLimiter} of the transport. Requests that are throttled by the server or fail
+ * with a server error are retried a configurable amount of times after backing off. When SourceForge is unreachable
+ * or keeps failing, the {@link CircuitBreaker} of the transport lets the requests fail fast for a while.
+ */
+class HttpTransport {
+    private static final String MAX_CONNECTIONS_PROPERTY = "teamcity.sourceforge.http.maxConnections";
+    private static final String CONNECT_TIMEOUT_PROPERTY = "teamcity.sourceforge.http.connectTimeoutMillis";
+    private static final String READ_TIMEOUT_PROPERTY = "teamcity.sourceforge.http.readTimeoutMillis";
+    private static final String MAX_RETRIES_PROPERTY = "teamcity.sourceforge.backoff.maxRetries";
+    private static final String HTTPS_PROXY_HOST_PROPERTY = "teamcity.https.proxyHost";
+    private static final String HTTPS_PROXY_PORT_PROPERTY = "teamcity.https.proxyPort";
+    private static final String HTTP_PROXY_HOST_PROPERTY = "teamcity.http.proxyHost";
+    private static final String HTTP_PROXY_PORT_PROPERTY = "teamcity.http.proxyPort";
+    private static final String PROXY_LOGIN_PROPERTY = "teamcity.http.proxyLogin";
+    private static final String PROXY_PASSWORD_PROPERTY = "teamcity.http.proxyPassword";
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * A response handler that ignores the response body, for requests where only the success matters.
+     */
+    static final ResponseHandler<Void> IGNORING_HANDLER = new ResponseHandler<Void>() {
+        @Nullable
+        @Override
+        public Void handle(@NotNull InputStream body) {
+            return null;
+        }
+    };
+
+    private final MultiThreadedHttpConnectionManager connectionManager;
+    private final HttpClient httpClient;
+    private static final Pattern CONNECTION_PATTERN = Pattern.compile("/rest/([^/?]+/[^/?]+(?:/[^/?]+)?)");
+
+    private final FetcherMetrics metrics;
+    private final RateLimiter rateLimiter = new RateLimiter();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    HttpTransport(@NotNull FetcherMetrics metrics) {
+        this.metrics = metrics;
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        int maxConnections = Math.max(1, TeamCityProperties.getInteger(MAX_CONNECTIONS_PROPERTY, 20));
+        params.setMaxTotalConnections(maxConnections);
+        params.setDefaultMaxConnectionsPerHost(maxConnections);
+        params.setConnectionTimeout(TeamCityProperties.getInteger(CONNECT_TIMEOUT_PROPERTY, 10000));
+        params.setSoTimeout(TeamCityProperties.getInteger(READ_TIMEOUT_PROPERTY, 30000));
+        params.setStaleCheckingEnabled(true);
+
+        httpClient = new HttpClient(connectionManager);
+        configureProxy(httpClient);
+    }
+
+    /**
+     * Configures the proxy of the specified client like TeamCity configures its own HTTP clients for outgoing
+     * connections, i.&nbsp;e. from the internal properties {@code teamcity.https.proxyHost} and
+     * {@code teamcity.https.proxyPort}, or {@code teamcity.http.proxyHost} and {@code teamcity.http.proxyPort},
+     * with the credentials from {@code teamcity.http.proxyLogin} and {@code teamcity.http.proxyPassword}.
+     * If no proxy is configured for TeamCity, the standard proxy settings of the JVM are honored.
+     *
+     * @param httpClient the client to configure
+     */
+    private static void configureProxy(@NotNull HttpClient httpClient) {
+        String proxyHost = TeamCityProperties.getProperty(HTTPS_PROXY_HOST_PROPERTY);
+        int proxyPort = TeamCityProperties.getInteger(HTTPS_PROXY_PORT_PROPERTY, 443);
+        if (isBlank(proxyHost)) {
+            proxyHost = TeamCityProperties.getProperty(HTTP_PROXY_HOST_PROPERTY);
+            proxyPort = TeamCityProperties.getInteger(HTTP_PROXY_PORT_PROPERTY, 80);
+        }
+        if (isBlank(proxyHost)) {
+            proxyHost = System.getProperty("https.proxyHost");
+            proxyPort = Integer.getInteger("https.proxyPort", 443);
+        }
+        if (isBlank(proxyHost)) {
+            return;
+        }
+
+        httpClient.getHostConfiguration().setProxy(proxyHost, proxyPort);
+        String proxyLogin = TeamCityProperties.getProperty(PROXY_LOGIN_PROPERTY);
+        if (isNotBlank(proxyLogin)) {
+            httpClient.getState().setProxyCredentials(AuthScope.ANY,
+                                                      new UsernamePasswordCredentials(proxyLogin, TeamCityProperties.getProperty(PROXY_PASSWORD_PROPERTY)));
+        }
+    }
+
+    /**
+     * Fetches the specified URL and hands the response body to the specified handler.
+     * The response body is closed and the connection is returned to the pool as soon as the handler returns.
+     *
+     * @param endpoint the type of the requested endpoint
+     * @param url      the URL to fetch
+     * @param handler  the handler that decodes the response body
+     * @param <T>      the type of the decoded result
+     * @return the result of the handler
+     * @throws NotFoundException      if the server responds that the URL does not exist
+     * @throws RetrieveIssueException if the server responds with any other unsuccessful status
+     * @throws IOException            if the request fails or the handler fails
+     */
+    <T> T get(@NotNull Endpoint endpoint, @NotNull String url, @NotNull ResponseHandler<T> handler) throws IOException {
+        return get(endpoint, url, null, null, handler).getResult();
+    }
+
+    /**
+     * Fetches the specified URL conditionally and hands the response body to the specified handler if the resource changed.
+     * The response body is closed and the connection is returned to the pool as soon as the handler returns.
+     *
+     * @param endpoint     the type of the requested endpoint
+     * @param url          the URL to fetch
+     * @param entityTag    the entity tag of the known version of the resource, or {@code null} if none is known
+     * @param lastModified the last modification date of the known version of the resource, or {@code null} if none is known
+     * @param handler      the handler that decodes the response body
+     * @param <T>          the type of the decoded result
+     * @return the response, either with the result of the handler, or marked as not modified
+     * @throws NotFoundException      if the server responds that the URL does not exist
+     * @throws RetrieveIssueException if the server responds with any other unsuccessful status
+     * @throws IOException            if the request fails or the handler fails
+     */
+    @NotNull
+    <T> Response<T> get(@NotNull Endpoint endpoint, @NotNull String url, @Nullable String entityTag, @Nullable String lastModified, @NotNull ResponseHandler<T> handler)
+            throws IOException {
+        int maxRetries = Math.max(0, TeamCityProperties.getInteger(MAX_RETRIES_PROPERTY, 2));
+        for (int attempt = 0; ; attempt++) {
+            // an open circuit rejects the request right away instead of after waiting for a permit
+            circuitBreaker.check();
+            rateLimiter.acquire();
+            Response<T> response = execute(endpoint, url, entityTag, lastModified, handler, attempt < maxRetries);
+            if (response != null) {
+                return response;
+            }
+        }
+    }
+
+    /**
+     * Executes one attempt of a conditional request.
+     *
+     * @param endpoint     the type of the requested endpoint
+     * @param url          the URL to fetch
+     * @param entityTag    the entity tag of the known version of the resource, or {@code null} if none is known
+     * @param lastModified the last modification date of the known version of the resource, or {@code null} if none is known
+     * @param handler      the handler that decodes the response body
+     * @param retryable    whether the request may be retried if the server throttles it or fails with a server error
+     * @param <T>          the type of the decoded result
+     * @return the response, or {@code null} if the request should be retried
+     * @throws NotFoundException      if the server responds that the URL does not exist
+     * @throws RetrieveIssueException if the server responds with any other unsuccessful status or the circuit is open
+     * @throws IOException            if the request fails or the handler fails
+     */
+    @Nullable
+    private <T> Response<T> execute(@NotNull Endpoint endpoint, @NotNull String url, @Nullable String entityTag, @Nullable String lastModified,
+                                    @NotNull ResponseHandler<T> handler, boolean retryable) throws IOException {
+        GetMethod method = new GetMethod(url);
+        method.setRequestHeader("Accept", "application/json");
+        method.setRequestHeader("Accept-Encoding", "gzip");
+        if (entityTag != null) {
+            method.setRequestHeader("If-None-Match", entityTag);
+        }
+        if (lastModified != null) {
+            method.setRequestHeader("If-Modified-Since", lastModified);
+        }
+        try {
+            circuitBreaker.acquire();
+            int statusCode;
+            String connection = getConnection(url);
+            long start = System.nanoTime();
+            try {
+                statusCode = httpClient.executeMethod(method);
+            } catch (IOException e) {
+                metrics.recordRequest(endpoint, connection, System.nanoTime() - start, false);
+                circuitBreaker.onFailure();
+                throw e;
+            } catch (RuntimeException e) {
+                metrics.recordRequest(endpoint, connection, System.nanoTime() - start, false);
+                circuitBreaker.onFailure();
+                throw e;
+            }
+            metrics.recordRequest(endpoint, connection, System.nanoTime() - start, (statusCode < 400) || (statusCode == SC_NOT_FOUND));
+            if (statusCode >= SC_INTERNAL_SERVER_ERROR) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+
+            if ((statusCode == SC_TOO_MANY_REQUESTS) || (statusCode >= SC_INTERNAL_SERVER_ERROR)) {
+                rateLimiter.onThrottled(getRetryAfter(method));
+                if (retryable) {
+                    return null;
+                }
+            } else {
+                rateLimiter.onSuccess();
+            }
+            if ((statusCode == SC_NOT_MODIFIED) && ((entityTag != null) || (lastModified != null))) {
+                return new Response<T>(null, true, entityTag, lastModified);
+            }
+            if (statusCode == SC_NOT_FOUND) {
+                throw new NotFoundException(format("'%s' could not be found", url));
+            }
+            if (statusCode != SC_OK) {
+                throw new RetrieveIssueException(format("Fetching '%s' failed with status %d %s", url, statusCode, method.getStatusText()));
+            }
+
+            InputStream responseBody = method.getResponseBodyAsStream();
+            if (responseBody == null) {
+                throw new RetrieveIssueException(format("The response for '%s' has no body", url));
+            }
+            CountingInputStream countingBody = new CountingInputStream(responseBody);
+            InputStream body = countingBody;
+            long decodeStart = System.nanoTime();
+            try {
+                if ("gzip".equalsIgnoreCase(getResponseHeader(method, "Content-Encoding"))) {
+                    body = new GZIPInputStream(body);
+                }
+                return new Response<T>(handler.handle(body), false,
+                                       getResponseHeader(method, "ETag"), getResponseHeader(method, "Last-Modified"));
+            } finally {
+                metrics.recordDecoding(countingBody.getCount(), System.nanoTime() - decodeStart);
+                body.close();
+            }
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    @Nullable
+    private static String getResponseHeader(@NotNull GetMethod method, @NotNull String name) {
+        Header header = method.getResponseHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * Returns the connection, that is the project and ticket tool, a request belongs to, for the metrics.
+     *
+     * @param url the URL of the request
+     * @return the project and ticket tool of the request, the project only for project requests
+     */
+    @NotNull
+    private static String getConnection(@NotNull String url) {
+        Matcher matcher = CONNECTION_PATTERN.matcher(url);
+        return matcher.find() ? matcher.group(1) : url;
+    }
+
+    /**
+     * Returns the time the server asked to wait before the next request.
+     *
+     * @param method the executed method
+     * @return the time in milliseconds from the {@code Retry-After} header, or {@code -1} if the header is missing or invalid
+     */
+    private static long getRetryAfter(@NotNull GetMethod method) {
+        String retryAfter = getResponseHeader(method, "Retry-After");
+        if (isBlank(retryAfter)) {
+            return -1;
+        }
+        retryAfter = retryAfter.trim();
+        if (isNumeric(retryAfter)) {
+            try {
+                return SECONDS.toMillis(Long.parseLong(retryAfter));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        try {
+            return Math.max(0, DateUtil.parseDate(retryAfter).getTime() - System.currentTimeMillis());
+        } catch (DateParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns whether requests currently fail fast, because SourceForge is unreachable or keeps failing.
+     *
+     * @return whether the circuit breaker of this transport is open
+     */
+    boolean isCircuitOpen() {
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * Closes all pooled connections.
+     */
+    void dispose() {
+        connectionManager.shutdown();
+    }
+
+    /**
+     * A handler that decodes the body of a successful response.
+     *
+     * @param <T> the type of the decoded result
+     */
+    interface ResponseHandler<T> {
+        /**
+         * Decodes the specified response body.
+         * The body must not be used anymore after this method returned.
+         *
+         * @param body the response body
+         * @return the decoded result
+         * @throws IOException if reading or decoding the body fails
+         */
+        T handle(@NotNull InputStream body) throws IOException;
+    }
+
+    /**
+     * The response to a conditional request.
+     *
+     * @param <T> the type of the decoded result
+     */
+    static class Response<T> {
+        private final T result;
+        private final boolean notModified;
+        private final String entityTag;
+        private final String lastModified;
+
+        Response(@Nullable T result, boolean notModified, @Nullable String entityTag, @Nullable String lastModified) {
+            this.result = result;
+            this.notModified = notModified;
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Returns the result of the response handler.
+         *
+         * @return the result of the response handler, or {@code null} if the resource was not modified
+         */
+        @Nullable
+        T getResult() {
+            return result;
+        }
+
+        /**
+         * Returns whether the server confirmed that the known version of the resource is still current.
+         *
+         * @return whether the resource was not modified
+         */
+        boolean isNotModified() {
+            return notModified;
+        }
+
+        @Nullable
+        String getEntityTag() {
+            return entityTag;
+        }
+
+        @Nullable
+        String getLastModified() {
+            return lastModified;
+        }
+    }
+}
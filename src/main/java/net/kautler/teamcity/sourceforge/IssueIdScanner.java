@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import net.kautler.teamcity.sourceforge.cache.BoundedCache;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Finds the issue IDs of several issue patterns in a text with one scan.
+ * <p/>
+ * The ID of a match is the first group of the pattern if it has groups, or the whole match otherwise.
+ * The result for each pattern is the same as if the text was scanned with that pattern alone.
+ * <p/>
+ * To achieve this, the patterns are combined into one pattern that tries each of them as optional lookahead
+ * at every position of the text, each wrapped in a capturing group. As Java 6 does not support named groups,
+ * the wrapping groups are found by their offsets, which are derived from the group counts of the patterns.
+ * The flags of a pattern are embedded as inline flags of a non-capturing group around it.
+ * Patterns that cannot be embedded, because they use flags without inline form, quotations that might not be terminated,
+ * back references that would be renumbered, or named groups whose names might clash with those of other patterns,
+ * are scanned separately. If the combined pattern cannot be compiled nevertheless, all patterns are scanned separately.
+ */
+class IssueIdScanner {
+    private static final Pattern UNEMBEDDABLE_PATTERN = Pattern.compile("\\\\[1-9Qk]|\\(\\?<[a-zA-Z]");
+    private static final int[] INLINE_FLAGS = { Pattern.UNIX_LINES, Pattern.CASE_INSENSITIVE, Pattern.COMMENTS, Pattern.MULTILINE,
+                                                Pattern.DOTALL, Pattern.UNICODE_CASE };
+    private static final String INLINE_FLAG_CHARACTERS = "dixmsu";
+    private static final BoundedCache<List<String>, IssueIdScanner> cache = new BoundedCache<List<String>, IssueIdScanner>(100, 0);
+
+    private final List<Pattern> patterns;
+    private final Pattern combinedPattern;
+    private final int[] combinedIndices;
+    private final int[] wrapperGroups;
+    private final boolean[] idGroups;
+    private final boolean[] combined;
+
+    private IssueIdScanner(@NotNull List<Pattern> patterns) {
+        this.patterns = patterns;
+
+        boolean[] combinable = new boolean[patterns.size()];
+        List<Integer> combinableIndices = new ArrayList<Integer>();
+        for (int i = 0, j = patterns.size(); i < j; i++) {
+            if (isCombinable(patterns.get(i))) {
+                combinable[i] = true;
+                combinableIndices.add(i);
+            }
+        }
+        if (combinableIndices.size() < 2) {
+            // scanning with the pattern itself is faster than with the lookahead
+            combinedPattern = null;
+            combinedIndices = new int[0];
+            wrapperGroups = new int[0];
+            idGroups = new boolean[0];
+            combined = new boolean[patterns.size()];
+            return;
+        }
+
+        combinedIndices = new int[combinableIndices.size()];
+        wrapperGroups = new int[combinableIndices.size()];
+        idGroups = new boolean[combinableIndices.size()];
+        StringBuilder combinedPatternBuilder = new StringBuilder();
+        int group = 1;
+        for (int i = 0, j = combinableIndices.size(); i < j; i++) {
+            Pattern pattern = patterns.get(combinableIndices.get(i));
+            int groupCount = pattern.matcher("").groupCount();
+            combinedIndices[i] = combinableIndices.get(i);
+            wrapperGroups[i] = group;
+            idGroups[i] = groupCount > 0;
+            combinedPatternBuilder.append("(?:(?=(").append(getEmbeddablePattern(pattern)).append(")))?");
+            group += groupCount + 1;
+        }
+        Pattern compiledPattern;
+        try {
+            compiledPattern = Pattern.compile(combinedPatternBuilder.toString());
+        } catch (PatternSyntaxException e) {
+            // some construct does not survive the combination, so the patterns are scanned separately
+            compiledPattern = null;
+        }
+        combinedPattern = compiledPattern;
+        combined = compiledPattern == null ? new boolean[patterns.size()] : combinable;
+    }
+
+    /**
+     * Returns a scanner for the specified patterns.
+     * Scanners are cached, so that the combined pattern is only compiled once for the same patterns.
+     *
+     * @param patterns the issue patterns to scan for
+     * @return the scanner for the patterns
+     */
+    @NotNull
+    static IssueIdScanner forPatterns(@NotNull List<Pattern> patterns) {
+        List<String> key = new ArrayList<String>(patterns.size());
+        for (Pattern pattern : patterns) {
+            key.add(pattern.flags() + "/" + pattern.pattern());
+        }
+        IssueIdScanner scanner = cache.get(key);
+        if (scanner == null) {
+            scanner = cache.putIfAbsent(key, new IssueIdScanner(new ArrayList<Pattern>(patterns)));
+        }
+        return scanner;
+    }
+
+    private static boolean isCombinable(@NotNull Pattern pattern) {
+        int flags = pattern.flags();
+        for (int inlineFlag : INLINE_FLAGS) {
+            flags &= ~inlineFlag;
+        }
+        return (flags == 0) && !UNEMBEDDABLE_PATTERN.matcher(pattern.pattern()).find();
+    }
+
+    /**
+     * Returns the specified pattern with its flags embedded as inline flags of a non-capturing group,
+     * so that they only apply to this pattern within the combined pattern.
+     *
+     * @param pattern the combinable pattern to embed
+     * @return the embeddable regular expression
+     */
+    @NotNull
+    private static String getEmbeddablePattern(@NotNull Pattern pattern) {
+        if (pattern.flags() == 0) {
+            return pattern.pattern();
+        }
+        StringBuilder result = new StringBuilder("(?");
+        for (int i = 0; i < INLINE_FLAGS.length; i++) {
+            if ((pattern.flags() & INLINE_FLAGS[i]) != 0) {
+                result.append(INLINE_FLAG_CHARACTERS.charAt(i));
+            }
+        }
+        result.append(':').append(pattern.pattern());
+        if ((pattern.flags() & Pattern.COMMENTS) != 0) {
+            // a trailing comment must not swallow the closing parenthesis
+            result.append('\n');
+        }
+        return result.append(')').toString();
+    }
+
+    /**
+     * Returns whether the specified pattern is scanned as part of the combined pattern.
+     * This method is mainly present to verify the combination in tests.
+     *
+     * @param index the index of the pattern
+     * @return whether the pattern is scanned as part of the combined pattern
+     */
+    boolean isCombined(int index) {
+        return combined[index];
+    }
+
+    /**
+     * Finds the issue IDs of all patterns in the specified text.
+     *
+     * @param text the text to scan
+     * @return the found IDs for each pattern, in the order of the patterns, each in the order of their occurrence
+     */
+    @NotNull
+    List<List<String>> scan(@NotNull CharSequence text) {
+        List<List<String>> result = new ArrayList<List<String>>(patterns.size());
+        for (int i = 0, j = patterns.size(); i < j; i++) {
+            result.add(combined[i] ? new ArrayList<String>() : scan(patterns.get(i), text));
+        }
+        if (combinedPattern == null) {
+            return result;
+        }
+
+        // each pattern continues after the end of its last match, just as if it was scanned alone
+        int[] nextStarts = new int[combinedIndices.length];
+        Matcher matcher = combinedPattern.matcher(text);
+        while (matcher.find()) {
+            int start = matcher.start();
+            for (int i = 0; i < combinedIndices.length; i++) {
+                int wrapperGroup = wrapperGroups[i];
+                if ((start < nextStarts[i]) || (matcher.start(wrapperGroup) == -1)) {
+                    continue;
+                }
+                String id = matcher.group(idGroups[i] ? wrapperGroup + 1 : wrapperGroup);
+                if (id != null) {
+                    result.get(combinedIndices[i]).add(id);
+                }
+                int end = matcher.end(wrapperGroup);
+                nextStarts[i] = end > start ? end : start + 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the issue IDs of the specified pattern in the specified text with one scan,
+     * capturing the ID together with finding the match.
+     *
+     * @param pattern the issue pattern to scan for
+     * @param text    the text to scan
+     * @return the found IDs in the order of their occurrence
+     */
+    @NotNull
+    static List<String> scan(@NotNull Pattern pattern, @NotNull CharSequence text) {
+        List<String> result = new ArrayList<String>();
+        Matcher matcher = pattern.matcher(text);
+        boolean idGroup = matcher.groupCount() > 0;
+        while (matcher.find()) {
+            String id = idGroup ? matcher.group(1) : matcher.group();
+            if (id != null) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import jetbrains.buildServer.issueTracker.errors.RetrieveIssueException;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import net.kautler.teamcity.sourceforge.RateLimiter.Priority;
+import net.kautler.teamcity.sourceforge.cache.BoundedCache;
+import net.kautler.teamcity.sourceforge.cache.ProjectMetadata;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static java.lang.Boolean.TRUE;
+import static net.kautler.teamcity.sourceforge.RateLimiter.Priority.BACKGROUND;
+
+/**
+ * A cache of the metadata of SourceForge projects, keyed by the unix name of the project, e.&nbsp;g. 'p/my-project'.
+ * <p/>
+ * Metadata that is older than the configured time to live is still served, but refreshed in the background,
+ * until it reaches the configured maximum age.
+ */
+class ProjectMetadataCache {
+    private static final String TIME_TO_LIVE_PROPERTY = "teamcity.sourceforge.projectCache.timeToLiveSeconds";
+    private static final String MAX_AGE_PROPERTY = "teamcity.sourceforge.projectCache.maxAgeSeconds";
+
+    private final SourceForgeIssueFetcher fetcher;
+    private final Executor refreshExecutor;
+    private final BoundedCache<String, ProjectMetadata> projects =
+            new BoundedCache<String, ProjectMetadata>(1000, TeamCityProperties.getInteger(MAX_AGE_PROPERTY, 3600) * 1000L);
+    private final ConcurrentMap<String, Boolean> refreshingProjects = new ConcurrentHashMap<String, Boolean>();
+
+    ProjectMetadataCache(@NotNull SourceForgeIssueFetcher fetcher, @NotNull Executor refreshExecutor) {
+        this.fetcher = fetcher;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Returns the metadata of the specified project, fetching it if it is not cached.
+     * If a ticket tool is required that the cached metadata does not know, the metadata is fetched again,
+     * as the ticket tool might have been added since.
+     *
+     * @param projectName        the unix name of the project
+     * @param requiredTicketTool the mount point of a ticket tool the project should have, or {@code null}
+     * @return the metadata of the project
+     * @throws RetrieveIssueException if the project does not exist or could not be fetched
+     * @throws IOException            if the project could not be fetched
+     */
+    @NotNull
+    ProjectMetadata get(@NotNull String projectName, @Nullable String requiredTicketTool) throws IOException {
+        ProjectMetadata metadata = getIfPresent(projectName, requiredTicketTool);
+        return metadata == null ? refresh(projectName) : metadata;
+    }
+
+    /**
+     * Returns the cached metadata of the specified project without waiting for any request.
+     * If the cached metadata is older than the configured time to live, it is refreshed in the background.
+     *
+     * @param projectName        the unix name of the project
+     * @param requiredTicketTool the mount point of a ticket tool the project should have, or {@code null}
+     * @return the metadata of the project, or {@code null} if it is not cached or does not know the required ticket tool
+     */
+    @Nullable
+    ProjectMetadata getIfPresent(@NotNull String projectName, @Nullable String requiredTicketTool) {
+        ProjectMetadata metadata = projects.get(projectName);
+        if ((metadata == null) || ((requiredTicketTool != null) && !metadata.hasTicketTool(requiredTicketTool))) {
+            return null;
+        }
+        if (metadata.getAge() > TeamCityProperties.getInteger(TIME_TO_LIVE_PROPERTY, 60) * 1000L) {
+            refreshAsynchronously(projectName);
+        }
+        return metadata;
+    }
+
+    /**
+     * Fetches the metadata of the specified project and caches it.
+     *
+     * @param projectName the unix name of the project
+     * @return the fetched metadata of the project
+     * @throws RetrieveIssueException if the project does not exist or could not be fetched
+     * @throws IOException            if the project could not be fetched
+     */
+    @NotNull
+    ProjectMetadata refresh(@NotNull String projectName) throws IOException {
+        ProjectMetadata metadata = new ProjectMetadata(fetcher.fetchProject(projectName), System.currentTimeMillis());
+        projects.put(projectName, metadata);
+        return metadata;
+    }
+
+    private void refreshAsynchronously(@NotNull final String projectName) {
+        if (refreshingProjects.putIfAbsent(projectName, TRUE) != null) {
+            return;
+        }
+        Runnable refresh = new Runnable() {
+            @Override
+            public void run() {
+                Priority previousPriority = RateLimiter.setPriority(BACKGROUND);
+                try {
+                    refresh(projectName);
+                } catch (RetrieveIssueException e) {
+                    // the cached metadata is served until it reaches the maximum age
+                } catch (IOException e) {
+                    // the cached metadata is served until it reaches the maximum age
+                } finally {
+                    RateLimiter.setPriority(previousPriority);
+                    refreshingProjects.remove(projectName);
+                }
+            }
+        };
+        try {
+            refreshExecutor.execute(refresh);
+        } catch (RejectedExecutionException e) {
+            refreshingProjects.remove(projectName);
+        }
+    }
+}
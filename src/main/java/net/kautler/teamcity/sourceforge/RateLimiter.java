@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.io.InterruptedIOException;
+
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * A token bucket rate limiter for the requests to the SourceForge API, that additionally backs off adaptively
+ * when the server throttles the requests.
+ * <p/>
+ * Requests have a priority that is bound to the current thread. Interactive requests always go ahead of
+ * background requests, a background request is only let through while no interactive request is waiting.
+ */
+class RateLimiter {
+    private static final String REQUESTS_PER_SECOND_PROPERTY = "teamcity.sourceforge.rateLimit.requestsPerSecond";
+    private static final String BURST_PROPERTY = "teamcity.sourceforge.rateLimit.burst";
+    private static final String INITIAL_BACKOFF_PROPERTY = "teamcity.sourceforge.backoff.initialMillis";
+    private static final String MAX_BACKOFF_PROPERTY = "teamcity.sourceforge.backoff.maxSeconds";
+
+    private static final ThreadLocal<Priority> currentPriority = new ThreadLocal<Priority>() {
+        @Override
+        protected Priority initialValue() {
+            return Priority.INTERACTIVE;
+        }
+    };
+
+    private final Object lock = new Object();
+    private final double permitsPerNano;
+    private final double burst;
+    private double permits;
+    private long lastRefillTime = System.nanoTime();
+    private long blockedUntil = lastRefillTime;
+    private int consecutiveThrottles;
+    private int waitingInteractiveRequests;
+
+    RateLimiter() {
+        permitsPerNano = TeamCityProperties.getInteger(REQUESTS_PER_SECOND_PROPERTY, 5) / (double) SECONDS.toNanos(1);
+        burst = Math.max(1, TeamCityProperties.getInteger(BURST_PROPERTY, 10));
+        permits = burst;
+    }
+
+    /**
+     * Sets the priority of the requests of the current thread.
+     *
+     * @param priority the priority of the requests of the current thread
+     * @return the previous priority of the requests of the current thread, to be restored afterwards
+     */
+    @NotNull
+    static Priority setPriority(@NotNull Priority priority) {
+        Priority previousPriority = currentPriority.get();
+        currentPriority.set(priority);
+        return previousPriority;
+    }
+
+    /**
+     * Returns the priority of the requests of the current thread.
+     *
+     * @return the priority of the requests of the current thread
+     */
+    @NotNull
+    static Priority getPriority() {
+        return currentPriority.get();
+    }
+
+    /**
+     * Waits until a request with the priority of the current thread may be sent.
+     *
+     * @throws InterruptedIOException if the current thread is interrupted while waiting
+     */
+    void acquire() throws InterruptedIOException {
+        boolean interactive = currentPriority.get() == Priority.INTERACTIVE;
+        synchronized (lock) {
+            if (interactive) {
+                waitingInteractiveRequests++;
+            }
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    if (!interactive && (waitingInteractiveRequests > 0)) {
+                        // the interactive requests notify when they got their permit
+                        lock.wait();
+                    } else if (now - blockedUntil < 0) {
+                        waitNanos(blockedUntil - now);
+                    } else if (permitsPerNano <= 0) {
+                        // rate limiting is disabled, only the backoff applies
+                        return;
+                    } else if (permits >= 1) {
+                        permits--;
+                        return;
+                    } else {
+                        waitNanos((long) Math.ceil((1 - permits) / permitsPerNano));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limiter");
+            } finally {
+                if (interactive) {
+                    waitingInteractiveRequests--;
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void refill(long now) {
+        permits = Math.min(burst, permits + (now - lastRefillTime) * permitsPerNano);
+        lastRefillTime = now;
+    }
+
+    private void waitNanos(long nanos) throws InterruptedException {
+        lock.wait(Math.max(1, NANOSECONDS.toMillis(nanos)));
+    }
+
+    /**
+     * Records that a request succeeded, which resets the adaptive backoff.
+     */
+    void onSuccess() {
+        synchronized (lock) {
+            consecutiveThrottles = 0;
+        }
+    }
+
+    /**
+     * Records that the server throttled a request or failed with a server error and blocks all requests for a while.
+     * <p/>
+     * If the server told how long to wait, that time is used, otherwise the time doubles with each consecutive
+     * throttled request, starting at the configured initial backoff. The time is limited to the configured maximum
+     * backoff in both cases, so that a misbehaving server cannot block the issue lookups for too long.
+     *
+     * @param retryAfterMillis the time in milliseconds the server asked to wait, or a negative value if it did not tell
+     */
+    void onThrottled(long retryAfterMillis) {
+        long maxBackoff = SECONDS.toNanos(TeamCityProperties.getInteger(MAX_BACKOFF_PROPERTY, 60));
+        synchronized (lock) {
+            long backoff;
+            if (retryAfterMillis >= 0) {
+                backoff = MILLISECONDS.toNanos(retryAfterMillis);
+            } else {
+                long initialBackoff = MILLISECONDS.toNanos(TeamCityProperties.getInteger(INITIAL_BACKOFF_PROPERTY, 1000));
+                backoff = initialBackoff << Math.min(consecutiveThrottles, 16);
+            }
+            consecutiveThrottles++;
+            long now = System.nanoTime();
+            long newBlockedUntil = now + Math.min(backoff, maxBackoff);
+            if (newBlockedUntil - blockedUntil > 0) {
+                blockedUntil = newBlockedUntil;
+            }
+        }
+    }
+
+    /**
+     * The priority of a request.
+     */
+    enum Priority {
+        /**
+         * A request somebody is waiting for, like an issue that is shown in the UI.
+         */
+        INTERACTIVE,
+
+        /**
+         * A request that fills caches in the background, like batch fetches, refreshes and synchronizations.
+         */
+        BACKGROUND
+    }
+}
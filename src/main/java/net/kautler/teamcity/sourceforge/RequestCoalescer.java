@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Coalesces concurrent requests for the same URL into one request.
+ * <p/>
+ * The first caller for a URL executes the request, all callers that ask for the same URL while the request
+ * is still in flight wait for it and get the same decoded result, or the same exception.
+ * As soon as the request is finished, the next caller for the URL executes a new request.
+ */
+class RequestCoalescer {
+    private final ConcurrentMap<String, FutureTask<?>> inFlightRequests = new ConcurrentHashMap<String, FutureTask<?>>();
+
+    /**
+     * Executes the specified request, or waits for the request for the same URL that is in flight already.
+     * <p/>
+     * All requests for the same URL must produce results of the same type.
+     *
+     * @param url     the URL of the request
+     * @param request the request that fetches and decodes the URL
+     * @param <T>     the type of the decoded result
+     * @return the decoded result
+     * @throws IOException if the request fails
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(@NotNull String url, @NotNull Callable<T> request) throws IOException {
+        FutureTask<T> task = new FutureTask<T>(request);
+        FutureTask<?> inFlightTask = inFlightRequests.putIfAbsent(url, task);
+        if (inFlightTask != null) {
+            return (T) getResult(inFlightTask);
+        }
+        try {
+            task.run();
+        } finally {
+            inFlightRequests.remove(url, task);
+        }
+        return getResult(task);
+    }
+
+    /**
+     * Waits for the specified task and returns its result, unwrapping the exception it failed with.
+     *
+     * @param task the task to wait for
+     * @param <T>  the type of the result
+     * @return the result of the task
+     * @throws IOException if the task failed with an {@code IOException} or a checked exception,
+     *                     or the waiting thread was interrupted
+     */
+    private static <T> T getResult(@NotNull FutureTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a coalesced request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            IOException ioException = new IOException(String.valueOf(cause));
+            ioException.initCause(cause);
+            throw ioException;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import net.kautler.teamcity.sourceforge.cache.BoundedCache;
+import net.kautler.teamcity.sourceforge.cache.CacheStatistics;
+import net.kautler.teamcity.sourceforge.model.DataVehicle;
+import net.kautler.teamcity.sourceforge.model.Ticket;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static java.lang.String.format;
+
+/**
+ * Evaluates SourceForge search queries locally against already fetched tickets, so that classifying tickets
+ * as resolved or feature request does not need additional searches.
+ * <p/>
+ * Only the common subset of the search syntax is supported, for which the local evaluation gives
+ * the same result as the search on SourceForge:
+ * <ul>
+ * <li>
+ * {@code status:<value>} and {@code _<custom field>:<value>}, matching the exact value, or all values starting with
+ * the given prefix if the value ends with a {@code *}, e.&nbsp;g. 'status:closed-fixed' or 'status:closed*'
+ * </li>
+ * <li>
+ * {@code labels:<word>} or {@code label:<word>}, matching all tickets that have a label containing the word,
+ * ignoring case, where the words of a label are separated by whitespace or hyphens, e.&nbsp;g. 'labels:feature'.
+ * The search splits labels at further characters like dots or slashes, but whether it does so depends on the
+ * surrounding characters, so tickets with labels that contain any other character than letters, digits, whitespace
+ * and hyphens are not decidable locally, see {@link #isDecidable(Ticket)}
+ * </li>
+ * <li>values in double quotes, e.&nbsp;g. '_milestone:"1.0 beta"'</li>
+ * <li>
+ * {@code &&} and {@code AND}, {@code ||} and {@code OR}, {@code !} and {@code NOT}, as well as parentheses.
+ * As the search does not give precedence to {@code &&} over {@code ||}, both must not be mixed without parentheses.
+ * Negated conditions are only supported together with at least one not negated condition joined with {@code &&}.
+ * </li>
+ * </ul>
+ * For all other queries no evaluator is returned, so that the tickets are classified with a search on SourceForge.
+ * The same applies to the tickets that are not decidable by an evaluator.
+ * <p/>
+ * A query is compiled only once into an immutable and thread-safe evaluator
+ * that is shared by all connections using the same query as long as it stays in the cache.
+ */
+abstract class SearchQueryEvaluator {
+    private static final BoundedCache<String, SearchQueryEvaluator> cache = DataVehicle.createConnectionCache();
+    private static final SearchQueryEvaluator UNSUPPORTED = new Disjunction(new ArrayList<SearchQueryEvaluator>());
+    private static final Pattern VALUE_PATTERN = Pattern.compile("[\\w.\\-]+\\*?");
+    private static final Pattern WORD_PATTERN = Pattern.compile("[a-z0-9]+");
+    private static final Pattern WORD_SEPARATOR_PATTERN = Pattern.compile("[\\s\\-]+");
+    private static final Pattern DECIDABLE_LABEL_PATTERN = Pattern.compile("[a-zA-Z0-9\\s\\-]*");
+
+    /**
+     * Returns the evaluator for the specified search query.
+     *
+     * @param query the search query
+     * @return the compiled evaluator, or {@code null} if the query cannot be evaluated locally
+     */
+    @Nullable
+    static SearchQueryEvaluator forQuery(@NotNull String query) {
+        SearchQueryEvaluator evaluator = cache.get(query);
+        if (evaluator == null) {
+            SearchQueryEvaluator compiledEvaluator;
+            try {
+                compiledEvaluator = new Parser(query).parse();
+            } catch (UnsupportedQueryException e) {
+                compiledEvaluator = UNSUPPORTED;
+            }
+            evaluator = cache.putIfAbsent(query, compiledEvaluator);
+        }
+        return evaluator == UNSUPPORTED ? null : evaluator;
+    }
+
+    /**
+     * Returns the statistics of the cache of compiled evaluators.
+     *
+     * @return the statistics of the cache of compiled evaluators
+     */
+    @NotNull
+    static CacheStatistics getCacheStatistics() {
+        return cache;
+    }
+
+    /**
+     * Evaluates the search query against the specified ticket.
+     *
+     * @param ticket the ticket to evaluate the search query against
+     * @return whether the ticket matches the search query
+     */
+    abstract boolean matches(@NotNull Ticket ticket);
+
+    /**
+     * Returns whether the search query can be evaluated locally against the specified ticket with the same result
+     * as the search on SourceForge. If not, the ticket has to be classified with a search.
+     *
+     * @param ticket the ticket to evaluate the search query against
+     * @return whether {@link #matches(Ticket)} is reliable for the ticket
+     */
+    boolean isDecidable(@NotNull Ticket ticket) {
+        return true;
+    }
+
+    private static boolean areDecidable(@NotNull SearchQueryEvaluator[] conditions, @NotNull Ticket ticket) {
+        for (SearchQueryEvaluator condition : conditions) {
+            if (!condition.isDecidable(ticket)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Signals that a search query uses syntax that is not supported for local evaluation.
+     */
+    private static class UnsupportedQueryException extends Exception {
+        UnsupportedQueryException(@NotNull String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A recursive descent parser for the supported subset of the search syntax.
+     */
+    private static class Parser {
+        private final String query;
+        private final List<String> tokens = new ArrayList<String>();
+        private int position;
+
+        Parser(@NotNull String query) {
+            this.query = query;
+        }
+
+        /**
+         * Parses the whole query.
+         *
+         * @return the evaluator for the query
+         * @throws UnsupportedQueryException if the query is not supported for local evaluation
+         */
+        @NotNull
+        SearchQueryEvaluator parse() throws UnsupportedQueryException {
+            tokenize();
+            if (tokens.isEmpty()) {
+                throw new UnsupportedQueryException("The query is empty");
+            }
+            SearchQueryEvaluator evaluator = parseGroup();
+            if (position != tokens.size()) {
+                throw new UnsupportedQueryException(format("Unexpected '%s' in '%s'", tokens.get(position), query));
+            }
+            return evaluator;
+        }
+
+        /**
+         * Splits the query into parentheses, operators and terms, where a term may contain a double quoted value.
+         *
+         * @throws UnsupportedQueryException if the query contains escapes or unterminated double quotes
+         */
+        private void tokenize() throws UnsupportedQueryException {
+            for (int i = 0, j = query.length(); i < j; ) {
+                char c = query.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if ((c == '(') || (c == ')') || (c == '!')) {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if (query.startsWith("&&", i) || query.startsWith("||", i)) {
+                    tokens.add(query.substring(i, i + 2));
+                    i += 2;
+                } else {
+                    StringBuilder term = new StringBuilder();
+                    boolean quoted = false;
+                    for (; i < j; i++) {
+                        c = query.charAt(i);
+                        if (c == '\\') {
+                            throw new UnsupportedQueryException(format("Escapes are not supported in '%s'", query));
+                        }
+                        if (c == '"') {
+                            quoted = !quoted;
+                        } else if (!quoted && (Character.isWhitespace(c) || (c == '(') || (c == ')'))) {
+                            break;
+                        }
+                        term.append(c);
+                    }
+                    if (quoted) {
+                        throw new UnsupportedQueryException(format("Unterminated quote in '%s'", query));
+                    }
+                    tokens.add(term.toString());
+                }
+            }
+        }
+
+        /**
+         * Parses conditions that are joined with the same operator, up to the end of the query or a closing parenthesis.
+         *
+         * @return the evaluator for the conditions
+         * @throws UnsupportedQueryException if the conditions are not supported for local evaluation
+         */
+        @NotNull
+        private SearchQueryEvaluator parseGroup() throws UnsupportedQueryException {
+            List<SearchQueryEvaluator> positiveConditions = new ArrayList<SearchQueryEvaluator>();
+            List<SearchQueryEvaluator> negatedConditions = new ArrayList<SearchQueryEvaluator>();
+            String operator = null;
+            boolean first = true;
+            do {
+                if (!first) {
+                    String nextOperator = normalizeOperator(tokens.get(position++));
+                    if ((operator != null) && !operator.equals(nextOperator)) {
+                        throw new UnsupportedQueryException(format("Mixed operators without parentheses in '%s'", query));
+                    }
+                    operator = nextOperator;
+                }
+                boolean negated = false;
+                while ((position < tokens.size()) && isNegation(tokens.get(position))) {
+                    if (negated) {
+                        throw new UnsupportedQueryException(format("Multiple negations in '%s'", query));
+                    }
+                    negated = true;
+                    position++;
+                }
+                (negated ? negatedConditions : positiveConditions).add(parseCondition());
+                first = false;
+            } while ((position < tokens.size()) && isBinaryOperator(tokens.get(position)));
+
+            if (positiveConditions.isEmpty()) {
+                // a group of only negated conditions matches no ticket in the search instead of all other tickets
+                throw new UnsupportedQueryException(format("Only negated conditions in '%s'", query));
+            }
+            if ("&&".equals(operator)) {
+                return new Conjunction(positiveConditions, negatedConditions);
+            }
+            if (!negatedConditions.isEmpty()) {
+                // a negated condition joined with || is required by the search instead of being an alternative
+                throw new UnsupportedQueryException(format("Negated alternative in '%s'", query));
+            }
+            return positiveConditions.size() == 1 ? positiveConditions.get(0) : new Disjunction(positiveConditions);
+        }
+
+        /**
+         * Parses a parenthesized group or a term.
+         *
+         * @return the evaluator for the condition
+         * @throws UnsupportedQueryException if the condition is not supported for local evaluation
+         */
+        @NotNull
+        private SearchQueryEvaluator parseCondition() throws UnsupportedQueryException {
+            if (position >= tokens.size()) {
+                throw new UnsupportedQueryException(format("Unexpected end of '%s'", query));
+            }
+            String token = tokens.get(position++);
+            if ("(".equals(token)) {
+                SearchQueryEvaluator group = parseGroup();
+                if ((position >= tokens.size()) || !")".equals(tokens.get(position++))) {
+                    throw new UnsupportedQueryException(format("Unbalanced parentheses in '%s'", query));
+                }
+                return group;
+            }
+            if (")".equals(token) || isBinaryOperator(token) || isNegation(token)) {
+                throw new UnsupportedQueryException(format("Unexpected '%s' in '%s'", token, query));
+            }
+            return parseTerm(token);
+        }
+
+        /**
+         * Parses a term of the form {@code <field>:<value>}.
+         *
+         * @param term the term to parse
+         * @return the evaluator for the term
+         * @throws UnsupportedQueryException if the field or the value is not supported for local evaluation
+         */
+        @NotNull
+        private SearchQueryEvaluator parseTerm(@NotNull String term) throws UnsupportedQueryException {
+            int colon = term.indexOf(':');
+            if (colon <= 0) {
+                throw new UnsupportedQueryException(format("Term '%s' without field in '%s'", term, query));
+            }
+            String field = term.substring(0, colon);
+            String value = term.substring(colon + 1);
+            boolean quoted = (value.length() >= 2) && value.startsWith("\"") && value.endsWith("\"");
+            if (quoted) {
+                value = value.substring(1, value.length() - 1);
+                if (value.isEmpty() || (value.indexOf('"') != -1) || (value.indexOf('*') != -1) || (value.indexOf('?') != -1)) {
+                    throw new UnsupportedQueryException(format("Unsupported value in '%s'", term));
+                }
+            } else if (!VALUE_PATTERN.matcher(value).matches()) {
+                throw new UnsupportedQueryException(format("Unsupported value in '%s'", term));
+            }
+            boolean prefix = !quoted && value.endsWith("*");
+            if (prefix) {
+                value = value.substring(0, value.length() - 1);
+            }
+
+            if (field.equals("status")) {
+                return new StatusTerm(value, prefix);
+            }
+            if (field.startsWith("_")) {
+                return new CustomFieldTerm(field, value, prefix);
+            }
+            if (field.equals("labels") || field.equals("label")) {
+                // labels are searched word by word ignoring case, wildcard values are not lower cased by the search though
+                String word = prefix ? value : value.toLowerCase(Locale.ENGLISH);
+                if (quoted || !WORD_PATTERN.matcher(word).matches()) {
+                    throw new UnsupportedQueryException(format("Unsupported label value in '%s'", term));
+                }
+                return new LabelTerm(word, prefix);
+            }
+            throw new UnsupportedQueryException(format("Unsupported field in '%s'", term));
+        }
+
+        @NotNull
+        private String normalizeOperator(@NotNull String token) throws UnsupportedQueryException {
+            if ("&&".equals(token) || "AND".equals(token)) {
+                return "&&";
+            }
+            if ("||".equals(token) || "OR".equals(token)) {
+                return "||";
+            }
+            // conditions that are just separated by whitespace are joined with the default operator of the search
+            throw new UnsupportedQueryException(format("Missing operator before '%s' in '%s'", token, query));
+        }
+
+        private static boolean isBinaryOperator(@NotNull String token) {
+            return "&&".equals(token) || "||".equals(token) || "AND".equals(token) || "OR".equals(token);
+        }
+
+        private static boolean isNegation(@NotNull String token) {
+            return "!".equals(token) || "NOT".equals(token);
+        }
+    }
+
+    /**
+     * Matches tickets that match all positive conditions and none of the negated conditions.
+     */
+    private static class Conjunction extends SearchQueryEvaluator {
+        private final SearchQueryEvaluator[] positiveConditions;
+        private final SearchQueryEvaluator[] negatedConditions;
+
+        Conjunction(@NotNull List<SearchQueryEvaluator> positiveConditions, @NotNull List<SearchQueryEvaluator> negatedConditions) {
+            this.positiveConditions = positiveConditions.toArray(new SearchQueryEvaluator[positiveConditions.size()]);
+            this.negatedConditions = negatedConditions.toArray(new SearchQueryEvaluator[negatedConditions.size()]);
+        }
+
+        @Override
+        boolean matches(@NotNull Ticket ticket) {
+            for (SearchQueryEvaluator condition : positiveConditions) {
+                if (!condition.matches(ticket)) {
+                    return false;
+                }
+            }
+            for (SearchQueryEvaluator condition : negatedConditions) {
+                if (condition.matches(ticket)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean isDecidable(@NotNull Ticket ticket) {
+            return areDecidable(positiveConditions, ticket) && areDecidable(negatedConditions, ticket);
+        }
+    }
+
+    /**
+     * Matches tickets that match any of the conditions.
+     */
+    private static class Disjunction extends SearchQueryEvaluator {
+        private final SearchQueryEvaluator[] conditions;
+
+        Disjunction(@NotNull List<SearchQueryEvaluator> conditions) {
+            this.conditions = conditions.toArray(new SearchQueryEvaluator[conditions.size()]);
+        }
+
+        @Override
+        boolean matches(@NotNull Ticket ticket) {
+            for (SearchQueryEvaluator condition : conditions) {
+                if (condition.matches(ticket)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean isDecidable(@NotNull Ticket ticket) {
+            return areDecidable(conditions, ticket);
+        }
+    }
+
+    /**
+     * Matches tickets whose status equals or starts with a value.
+     */
+    private static class StatusTerm extends SearchQueryEvaluator {
+        private final String value;
+        private final boolean prefix;
+
+        StatusTerm(@NotNull String value, boolean prefix) {
+            this.value = value;
+            this.prefix = prefix;
+        }
+
+        @Override
+        boolean matches(@NotNull Ticket ticket) {
+            return matchesValue(ticket.getStatus(), value, prefix);
+        }
+    }
+
+    /**
+     * Matches tickets where the value of a custom field equals or starts with a value.
+     */
+    private static class CustomFieldTerm extends SearchQueryEvaluator {
+        private final String customFieldName;
+        private final String value;
+        private final boolean prefix;
+
+        CustomFieldTerm(@NotNull String customFieldName, @NotNull String value, boolean prefix) {
+            this.customFieldName = customFieldName;
+            this.value = value;
+            this.prefix = prefix;
+        }
+
+        @Override
+        boolean matches(@NotNull Ticket ticket) {
+            return (ticket.getCustomFields() != null) && matchesValue(ticket.getCustomFields().get(customFieldName), value, prefix);
+        }
+    }
+
+    /**
+     * Matches tickets with a label that contains a word, or a word starting with a prefix, ignoring case.
+     */
+    private static class LabelTerm extends SearchQueryEvaluator {
+        private final String word;
+        private final boolean prefix;
+
+        LabelTerm(@NotNull String word, boolean prefix) {
+            this.word = word;
+            this.prefix = prefix;
+        }
+
+        @Override
+        boolean matches(@NotNull Ticket ticket) {
+            for (String label : ticket.getLabels()) {
+                for (String labelWord : WORD_SEPARATOR_PATTERN.split(label)) {
+                    if (matchesValue(labelWord.toLowerCase(Locale.ENGLISH), word, prefix)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean isDecidable(@NotNull Ticket ticket) {
+            for (String label : ticket.getLabels()) {
+                if (!DECIDABLE_LABEL_PATTERN.matcher(label).matches()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static boolean matchesValue(@Nullable String actualValue, @NotNull String value, boolean prefix) {
+        return (actualValue != null) && (prefix ? actualValue.startsWith(value) : actualValue.equals(value));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.kautler.teamcity.sourceforge.cache.BoundedCache;
+import net.kautler.teamcity.sourceforge.cache.CacheStatistics;
+import net.kautler.teamcity.sourceforge.model.Ticket;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Stores the raw tickets fetched from SourceForge once per project, ticket tool and ticket number,
+ * independent of the connections they were fetched for.
+ * <p/>
+ * Several connections pointing at the same ticket tool only differ in how they project a ticket into an issue,
+ * so a ticket fetched for one connection is reused by the others until it expires. Together with each ticket
+ * it is remembered which search queries it matches, so that connections sharing a resolved or feature request query
+ * do not classify the ticket again. Storing a ticket again discards the remembered matches, as they might have changed.
+ */
+class SharedTicketStore {
+    private final boolean enabled;
+    private final BoundedCache<String, StoredTicket> tickets;
+
+    /**
+     * Creates a new ticket store.
+     *
+     * @param maxSize    the maximum amount of stored tickets
+     * @param timeToLive the time in milliseconds a ticket is reused after it was fetched, or a non-positive value
+     *                   to not store any tickets
+     */
+    SharedTicketStore(int maxSize, long timeToLive) {
+        enabled = timeToLive > 0;
+        tickets = new BoundedCache<String, StoredTicket>(maxSize, timeToLive);
+    }
+
+    /**
+     * Returns the stored ticket with the specified ticket number of the ticket tool of the specified connection.
+     *
+     * @param settings  the settings of a connection to the ticket tool of the ticket
+     * @param ticketNum the number of the ticket
+     * @return the stored ticket, or {@code null} if the ticket is not stored or expired
+     */
+    @Nullable
+    Ticket getTicket(@NotNull ConnectionSettings settings, @NotNull String ticketNum) {
+        StoredTicket storedTicket = tickets.get(getKey(settings, ticketNum));
+        return storedTicket == null ? null : storedTicket.ticket;
+    }
+
+    /**
+     * Stores the specified freshly fetched ticket of the ticket tool of the specified connection.
+     *
+     * @param settings the settings of the connection the ticket was fetched for
+     * @param ticket   the fetched ticket
+     */
+    void putTicket(@NotNull ConnectionSettings settings, @NotNull Ticket ticket) {
+        if (!enabled) {
+            return;
+        }
+        tickets.put(getKey(settings, ticket.getTicketNum()), new StoredTicket(ticket));
+    }
+
+    /**
+     * Returns whether the stored ticket with the specified ticket number matches the specified search query.
+     *
+     * @param settings    the settings of a connection to the ticket tool of the ticket
+     * @param ticketNum   the number of the ticket
+     * @param searchQuery the search query
+     * @return whether the ticket matches the search query, or {@code null} if this is not known
+     */
+    @Nullable
+    Boolean matches(@NotNull ConnectionSettings settings, @NotNull String ticketNum, @NotNull String searchQuery) {
+        StoredTicket storedTicket = tickets.get(getKey(settings, ticketNum));
+        return storedTicket == null ? null : storedTicket.queryMatches.get(searchQuery);
+    }
+
+    /**
+     * Remembers whether the stored ticket with the specified ticket number matches the specified search query.
+     * If the ticket is not stored, nothing is remembered.
+     *
+     * @param settings    the settings of a connection to the ticket tool of the ticket
+     * @param ticketNum   the number of the ticket
+     * @param searchQuery the search query
+     * @param matches     whether the ticket matches the search query
+     */
+    void putMatches(@NotNull ConnectionSettings settings, @NotNull String ticketNum, @NotNull String searchQuery, boolean matches) {
+        StoredTicket storedTicket = tickets.get(getKey(settings, ticketNum));
+        if (storedTicket != null) {
+            storedTicket.queryMatches.put(searchQuery, matches);
+        }
+    }
+
+    /**
+     * Returns the statistics of the stored tickets.
+     *
+     * @return the statistics of the stored tickets
+     */
+    @NotNull
+    CacheStatistics getCacheStatistics() {
+        return tickets;
+    }
+
+    /**
+     * Returns the key of a ticket, which is its API URL, as that is unique per project, ticket tool and ticket number.
+     *
+     * @param settings  the settings of a connection to the ticket tool of the ticket
+     * @param ticketNum the number of the ticket
+     * @return the key of the ticket
+     */
+    @NotNull
+    private static String getKey(@NotNull ConnectionSettings settings, @NotNull String ticketNum) {
+        return settings.getIssueUrl(ticketNum, true);
+    }
+
+    /**
+     * A stored ticket together with the search queries it is known to match or not to match.
+     */
+    private static class StoredTicket {
+        private final Ticket ticket;
+        private final ConcurrentMap<String, Boolean> queryMatches = new ConcurrentHashMap<String, Boolean>(4);
+
+        StoredTicket(@NotNull Ticket ticket) {
+            this.ticket = ticket;
+        }
+    }
+}
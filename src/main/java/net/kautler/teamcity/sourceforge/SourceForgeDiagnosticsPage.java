@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+
+import jetbrains.buildServer.controllers.admin.AdminPage;
+import jetbrains.buildServer.serverSide.auth.Permission;
+import jetbrains.buildServer.web.openapi.PagePlaces;
+import jetbrains.buildServer.web.openapi.PluginDescriptor;
+import jetbrains.buildServer.web.openapi.PositionConstraint;
+import net.kautler.teamcity.sourceforge.metrics.FetcherMetrics;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A page in the administration area, that shows the metrics of the SourceForge issue fetching.
+ */
+public class SourceForgeDiagnosticsPage extends AdminPage {
+    private final FetcherMetrics metrics;
+
+    public SourceForgeDiagnosticsPage(@NotNull PagePlaces pagePlaces, @NotNull PluginDescriptor pluginDescriptor,
+                                      @NotNull SourceForgeIssueFetcher fetcher) {
+        super(pagePlaces, "sourceforge", pluginDescriptor.getPluginResourcesPath("admin/diagnostics.jsp"), "SourceForge Diagnostics");
+        metrics = fetcher.getMetrics();
+        setPosition(PositionConstraint.last());
+        register();
+    }
+
+    @Override
+    public boolean isAvailable(@NotNull HttpServletRequest request) {
+        return super.isAvailable(request) && checkHasGlobalPermission(request, Permission.CHANGE_SERVER_SETTINGS);
+    }
+
+    @NotNull
+    @Override
+    public String getGroup() {
+        return SERVER_RELATED_GROUP;
+    }
+
+    @Override
+    public void fillModel(@NotNull Map<String, Object> model, @NotNull HttpServletRequest request) {
+        model.put("counters", metrics.getCounters());
+        model.put("connectionStatistics", metrics.getConnectionStatistics());
+    }
+}
@@ -16,6 +16,7 @@
 
 package net.kautler.teamcity.sourceforge;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -24,42 +25,66 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
 
 import com.google.gson.Gson;
 import jetbrains.buildServer.issueTracker.AbstractIssueFetcher;
 import jetbrains.buildServer.issueTracker.IssueData;
+import jetbrains.buildServer.issueTracker.errors.NotFoundException;
 import jetbrains.buildServer.issueTracker.errors.RetrieveIssueException;
+import jetbrains.buildServer.serverSide.ServerPaths;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import jetbrains.buildServer.util.cache.EhCacheUtil;
-import net.kautler.teamcity.sourceforge.model.SearchResult;
+import net.kautler.teamcity.sourceforge.HttpTransport.Response;
+import net.kautler.teamcity.sourceforge.HttpTransport.ResponseHandler;
+import net.kautler.teamcity.sourceforge.RateLimiter.Priority;
+import net.kautler.teamcity.sourceforge.cache.BoundedCache;
+import net.kautler.teamcity.sourceforge.cache.KnownIssue;
+import net.kautler.teamcity.sourceforge.cache.PersistentIssueCache;
+import net.kautler.teamcity.sourceforge.metrics.Endpoint;
+import net.kautler.teamcity.sourceforge.metrics.FetcherMetrics;
+import net.kautler.teamcity.sourceforge.model.DataVehicle;
+import net.kautler.teamcity.sourceforge.model.Project;
 import net.kautler.teamcity.sourceforge.model.Ticket;
-import net.kautler.teamcity.sourceforge.model.TicketWrapper;
+import net.kautler.teamcity.sourceforge.model.TicketStreamReader.TicketHandler;
 import org.apache.commons.httpclient.Credentials;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import static java.lang.Boolean.TRUE;
 import static java.lang.String.format;
 import static java.util.Collections.emptyList;
-import static jetbrains.buildServer.issueTracker.IssueData.PRIORITY_FIELD;
-import static jetbrains.buildServer.issueTracker.IssueData.SEVERITY_FIELD;
-import static jetbrains.buildServer.issueTracker.IssueData.STATE_FIELD;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static jetbrains.buildServer.issueTracker.IssueData.SUMMARY_FIELD;
-import static jetbrains.buildServer.issueTracker.IssueData.TYPE_FIELD;
-import static net.kautler.teamcity.sourceforge.SourceForgeIssueProvider.safeCompilePattern;
-import static net.kautler.teamcity.sourceforge.model.DataVehicle.getFeatureRequestQuery;
-import static net.kautler.teamcity.sourceforge.model.DataVehicle.getPriority;
-import static net.kautler.teamcity.sourceforge.model.DataVehicle.getProject;
-import static net.kautler.teamcity.sourceforge.model.DataVehicle.getResolvedQuery;
-import static net.kautler.teamcity.sourceforge.model.DataVehicle.getSeverity;
-import static net.kautler.teamcity.sourceforge.model.DataVehicle.getTicketTool;
-import static net.kautler.teamcity.sourceforge.model.DataVehicle.getType;
-import static org.apache.commons.lang.StringUtils.isEmpty;
+import static net.kautler.teamcity.sourceforge.HttpTransport.IGNORING_HANDLER;
+import static net.kautler.teamcity.sourceforge.RateLimiter.Priority.BACKGROUND;
+import static net.kautler.teamcity.sourceforge.metrics.Endpoint.PROJECT;
+import static net.kautler.teamcity.sourceforge.metrics.Endpoint.SEARCH;
+import static net.kautler.teamcity.sourceforge.metrics.Endpoint.TICKET;
+import static net.kautler.teamcity.sourceforge.model.TicketStreamReader.readSearchResult;
+import static net.kautler.teamcity.sourceforge.model.TicketStreamReader.readTicketWrapper;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 import static org.apache.commons.lang.StringUtils.isNotEmpty;
-import static org.apache.commons.lang.StringUtils.join;
+import static org.apache.commons.lang.StringUtils.removeEnd;
 
 /**
  * An {@code IssueFetcher}, that fetches SourceForge issues.
@@ -68,43 +93,530 @@ public class SourceForgeIssueFetcher extends AbstractIssueFetcher {
     public static final String LABELS_FIELD = "Labels";
     public static final String VOTES_FIELD = "Votes";
     private static final Gson GSON = new Gson();
+    private static final String BATCH_MAX_IDS_PROPERTY = "teamcity.sourceforge.batch.maxIds";
+    private static final String BATCH_MAX_URL_LENGTH_PROPERTY = "teamcity.sourceforge.batch.maxUrlLength";
+    private static final String BATCH_THREADS_PROPERTY = "teamcity.sourceforge.batch.threads";
+    private static final String STALE_WHILE_REVALIDATE_ENABLED_PROPERTY = "teamcity.sourceforge.staleWhileRevalidate.enabled";
+    private static final String STALE_WHILE_REVALIDATE_MIN_AGE_PROPERTY = "teamcity.sourceforge.staleWhileRevalidate.minAgeSeconds";
+    private static final String STALE_WHILE_REVALIDATE_MAX_AGE_PROPERTY = "teamcity.sourceforge.staleWhileRevalidate.maxAgeSeconds";
+    private static final String STALE_WHILE_REVALIDATE_MAX_SIZE_PROPERTY = "teamcity.sourceforge.staleWhileRevalidate.maxSize";
+    private static final String STALE_WHILE_REVALIDATE_THREADS_PROPERTY = "teamcity.sourceforge.staleWhileRevalidate.threads";
+    private static final String NEGATIVE_CACHE_MAX_SIZE_PROPERTY = "teamcity.sourceforge.negativeCache.maxSize";
+    private static final String NEGATIVE_CACHE_TIME_TO_LIVE_PROPERTY = "teamcity.sourceforge.negativeCache.timeToLiveSeconds";
+    private static final String PROJECT_CACHE_TIME_TO_LIVE_PROPERTY = "teamcity.sourceforge.projectCache.timeToLiveSeconds";
+    private static final String CONDITIONAL_REQUESTS_ENABLED_PROPERTY = "teamcity.sourceforge.conditionalRequests.enabled";
+    private static final String BASE_URL_PROPERTY = "teamcity.sourceforge.baseUrl";
+    private static final String TICKET_STORE_MAX_SIZE_PROPERTY = "teamcity.sourceforge.ticketStore.maxSize";
+    private static final String TICKET_STORE_TIME_TO_LIVE_PROPERTY = "teamcity.sourceforge.ticketStore.timeToLiveSeconds";
+    private static final String LOCAL_QUERIES_ENABLED_PROPERTY = "teamcity.sourceforge.localQueries.enabled";
+    private static final String ASYNC_THREADS_PROPERTY = "teamcity.sourceforge.async.threads";
+    private static final String ASYNC_QUEUE_SIZE_PROPERTY = "teamcity.sourceforge.async.queueSize";
+    private static final int VALIDATION_THREADS = 4;
+    private static final int VALIDATION_QUEUE_SIZE = 20;
 
-    public SourceForgeIssueFetcher(@NotNull EhCacheUtil cacheUtil) {
+    private final ExecutorService batchExecutor;
+    private final ExecutorService refreshExecutor;
+    private final ExecutorService validationExecutor;
+    private final ExecutorService asyncExecutor;
+    private final ExecutorService searchExecutor;
+    private final PersistentIssueCache persistentIssueCache;
+    private final BoundedCache<String, ConnectionSettings> connectionSettings = DataVehicle.createConnectionCache();
+    private final BoundedCache<String, KnownIssue> knownIssues;
+    private final BoundedCache<String, Boolean> missingIssues;
+    private final BoundedCache<String, Boolean> validatedSearchUrls;
+    private final SharedTicketStore ticketStore;
+    private final ProjectMetadataCache projectMetadataCache;
+    private final ConcurrentMap<String, Boolean> refreshingIssueKeys = new ConcurrentHashMap<String, Boolean>();
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+    private final FetcherMetrics metrics = new FetcherMetrics();
+    private final HttpTransport httpTransport = new HttpTransport(metrics);
+    private final TicketIndexSynchronizer ticketIndexSynchronizer;
+
+    public SourceForgeIssueFetcher(@NotNull EhCacheUtil cacheUtil, @NotNull PersistentIssueCache persistentIssueCache, @NotNull ServerPaths serverPaths) {
         super(cacheUtil);
+        this.persistentIssueCache = persistentIssueCache;
+        ticketIndexSynchronizer = new TicketIndexSynchronizer(this, new File(serverPaths.getPluginDataDirectory(), "sourceforge/index"));
+        int batchThreads = Math.max(1, TeamCityProperties.getInteger(BATCH_THREADS_PROPERTY, 4));
+        ThreadPoolExecutor batchExecutor = new ThreadPoolExecutor(batchThreads, batchThreads, 60, SECONDS,
+                                                                  new LinkedBlockingQueue<Runnable>(),
+                                                                  new DaemonThreadFactory("SourceForge batch fetcher"));
+        batchExecutor.allowCoreThreadTimeOut(true);
+        this.batchExecutor = batchExecutor;
+
+        int refreshThreads = Math.max(1, TeamCityProperties.getInteger(STALE_WHILE_REVALIDATE_THREADS_PROPERTY, 2));
+        ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60, SECONDS,
+                                                                    new LinkedBlockingQueue<Runnable>(),
+                                                                    new DaemonThreadFactory("SourceForge issue refresher"));
+        refreshExecutor.allowCoreThreadTimeOut(true);
+        this.refreshExecutor = refreshExecutor;
+
+        // the bounded pools run tasks on the submitting thread when they are saturated, which slows down the submitters
+        // instead of creating threads without limit
+        validationExecutor = createBoundedExecutor(VALIDATION_THREADS, new LinkedBlockingQueue<Runnable>(VALIDATION_QUEUE_SIZE),
+                                                   "SourceForge settings validator");
+        int asyncThreads = Math.max(1, TeamCityProperties.getInteger(ASYNC_THREADS_PROPERTY, 4));
+        asyncExecutor = createBoundedExecutor(asyncThreads,
+                                              new LinkedBlockingQueue<Runnable>(Math.max(1, TeamCityProperties.getInteger(ASYNC_QUEUE_SIZE_PROPERTY, 100))),
+                                              "SourceForge async fetcher");
+        // searches that are overlapped with another search never wait in a queue, as the waiting thread
+        // might itself be a thread of a pool, so they either get an idle thread or run on the submitting thread
+        searchExecutor = createBoundedExecutor(asyncThreads, new SynchronousQueue<Runnable>(), "SourceForge search");
+        knownIssues = new BoundedCache<String, KnownIssue>(TeamCityProperties.getInteger(STALE_WHILE_REVALIDATE_MAX_SIZE_PROPERTY, 10000),
+                                                           getMaxStaleAge());
+        missingIssues = new BoundedCache<String, Boolean>(TeamCityProperties.getInteger(NEGATIVE_CACHE_MAX_SIZE_PROPERTY, 10000),
+                                                          TeamCityProperties.getInteger(NEGATIVE_CACHE_TIME_TO_LIVE_PROPERTY, 600) * 1000L);
+        validatedSearchUrls = new BoundedCache<String, Boolean>(500, Math.max(1, TeamCityProperties.getInteger(PROJECT_CACHE_TIME_TO_LIVE_PROPERTY, 60)) * 1000L);
+        projectMetadataCache = new ProjectMetadataCache(this, refreshExecutor);
+        ticketStore = new SharedTicketStore(TeamCityProperties.getInteger(TICKET_STORE_MAX_SIZE_PROPERTY, 10000),
+                                            TeamCityProperties.getInteger(TICKET_STORE_TIME_TO_LIVE_PROPERTY, 60) * 1000L);
+
+        metrics.registerCache("connectionSettings", connectionSettings);
+        metrics.registerCache("knownIssues", knownIssues);
+        metrics.registerCache("missingIssues", missingIssues);
+        metrics.registerCache("validatedSearches", validatedSearchUrls);
+        metrics.registerCache("sharedTickets", ticketStore.getCacheStatistics());
+        metrics.registerCache("dataVehicles", DataVehicle.getCacheStatistics());
+        metrics.registerCache("customValueExtractors", CustomValueExtractor.getCacheStatistics());
+        metrics.registerCache("queryEvaluators", SearchQueryEvaluator.getCacheStatistics());
+        metrics.register();
+
+        if (persistentIssueCache.isEnabled()) {
+            batchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    warmCache();
+                }
+            });
+        }
+    }
+
+    /**
+     * Fills the in-memory cache with the issues from the persistent cache,
+     * so that issues seen before a restart of the server do not need to be fetched again.
+     */
+    private void warmCache() {
+        for (final PersistentIssueCache.Entry entry : persistentIssueCache.load()) {
+            if (isStaleWhileRevalidateEnabled()) {
+                knownIssues.put(entry.getIssueKey(), new KnownIssue(entry.getIssueData(), entry.getTimestamp()));
+            }
+            cacheIssueData(entry.getIssueKey(), entry.getIssueData());
+        }
+    }
+
+    /**
+     * Shuts down the background threads of this fetcher.
+     * This method is called by the Spring container when the server is shut down.
+     */
+    public void dispose() {
+        batchExecutor.shutdownNow();
+        refreshExecutor.shutdownNow();
+        validationExecutor.shutdownNow();
+        asyncExecutor.shutdownNow();
+        searchExecutor.shutdownNow();
+        ticketIndexSynchronizer.dispose();
+        httpTransport.dispose();
+        metrics.unregister();
+    }
+
+    /**
+     * Returns the metrics of this fetcher.
+     *
+     * @return the metrics of this fetcher
+     */
+    @NotNull
+    public FetcherMetrics getMetrics() {
+        return metrics;
     }
 
     @NotNull
     @Override
-    public IssueData getIssue(@NotNull final String dataVehicleJson, @NotNull final String id, @Nullable Credentials credentials) throws Exception {
-        final String issueUrl = getIssueUrl(dataVehicleJson, id, true);
-        return getFromCacheOrFetch(issueUrl, new FetchFunction() {
+    public IssueData getIssue(@NotNull String dataVehicleJson, @NotNull String id, @Nullable Credentials credentials) throws Exception {
+        return fetchIssue(dataVehicleJson, id);
+    }
+
+    /**
+     * Fetches the issue corresponding to the specified ID asynchronously, so that a caller can start several independent
+     * lookups and wait for all of them together instead of waiting for each round trip one after the other.
+     * The issue is fetched on a thread of this fetcher with the request priority of the calling thread,
+     * or on the calling thread itself if too many asynchronous lookups are pending.
+     *
+     * @param dataVehicleJson the {@code JSON} representation of the data vehicle transporting the configuration data
+     * @param id              the ID to fetch the issue for
+     * @param credentials     the credentials to use for authentication
+     * @return the future issue, failing with the same exceptions as {@link #getIssue(String, String, Credentials)}
+     */
+    @NotNull
+    public Future<IssueData> getIssueAsync(@NotNull final String dataVehicleJson, @NotNull final String id, @Nullable Credentials credentials) {
+        return submitAsync(asyncExecutor, new Callable<IssueData>() {
             @NotNull
             @Override
-            public IssueData fetch() throws IOException {
-                InputStream issueStream = fetchHttpFile(issueUrl);
-                Ticket ticket = GSON.fromJson(new InputStreamReader(issueStream), TicketWrapper.class).getTicket();
-                return getIssueData(ticket, dataVehicleJson);
+            public IssueData call() throws Exception {
+                return fetchIssue(dataVehicleJson, id);
             }
         });
     }
 
+    /**
+     * Fetches the issue corresponding to the specified ID through the issue cache of TeamCity.
+     *
+     * @param dataVehicleJson the {@code JSON} representation of the data vehicle transporting the configuration data
+     * @param id              the ID to fetch the issue for
+     * @return the fetched issue
+     * @throws Exception if fetching the issue fails
+     */
+    @NotNull
+    private IssueData fetchIssue(@NotNull String dataVehicleJson, @NotNull final String id) throws Exception {
+        final ConnectionSettings settings = getConnectionSettings(dataVehicleJson);
+        final String issueUrl = settings.getIssueUrl(id, true);
+        final String issueKey = settings.getIssueKey(id);
+        metrics.recordIssueLookups(1);
+        if (missingIssues.get(issueKey) != null) {
+            throw new NotFoundException(format("Issue '%s' could not be found", id));
+        }
+        // known issues are served before the issue cache of TeamCity, as it would keep a stale issue
+        // for its whole time to live, even after the issue was refreshed in the background
+        IssueData knownIssueData = getKnownIssueData(settings, singletonList(id)).get(id);
+        if (knownIssueData != null) {
+            return knownIssueData;
+        }
+        try {
+            return getFromCacheOrFetch(issueKey, new FetchFunction() {
+                @NotNull
+                @Override
+                public IssueData fetch() throws IOException {
+                    metrics.recordIssueFetches(1);
+                    IssueData localIssueData = getLocalIssueData(settings, singletonList(id)).get(id);
+                    if (localIssueData != null) {
+                        return localIssueData;
+                    }
+
+                    // revalidate the previously fetched version of the issue if possible instead of downloading it again
+                    final KnownIssue knownIssue = isConditionalRequestsEnabled() ? knownIssues.get(issueKey) : null;
+                    final String entityTag = knownIssue == null ? null : knownIssue.getEntityTag();
+                    final String lastModified = knownIssue == null ? null : knownIssue.getLastModified();
+
+                    // the ticket might have been fetched recently for another connection, then only the projection is needed
+                    Ticket storedTicket = ticketStore.getTicket(settings, id);
+                    if (storedTicket != null) {
+                        TicketClassification classification = classifyUndecidedTickets(settings, classifyTickets(settings, singletonList(id)),
+                                                                                        singletonList(storedTicket));
+                        IssueData issueData = getIssueData(storedTicket, settings, classification);
+                        if (!classification.isComplete()) {
+                            throw new IncompleteIssueException(issueData);
+                        }
+                        rememberIssue(settings, issueData, entityTag, lastModified);
+                        return issueData;
+                    }
+
+                    // only requests with the same validators can share their response
+                    String requestKey = (knownIssue != null) && knownIssue.hasValidators() ? format("%s%n%s%n%s", issueUrl, entityTag, lastModified) : issueUrl;
+                    Response<Ticket> response = requestCoalescer.execute(requestKey, new Callable<Response<Ticket>>() {
+                        @NotNull
+                        @Override
+                        public Response<Ticket> call() throws IOException {
+                            Response<Ticket> response = httpTransport.get(TICKET, issueUrl, entityTag, lastModified, new ResponseHandler<Ticket>() {
+                                @Nullable
+                                @Override
+                                public Ticket handle(@NotNull InputStream body) throws IOException {
+                                    return readTicketWrapper(body);
+                                }
+                            });
+                            if (!response.isNotModified() && (response.getResult() == null)) {
+                                throw new RetrieveIssueException(format("The response for '%s' does not contain a ticket", issueUrl));
+                            }
+                            return response;
+                        }
+                    });
+
+                    if (response.isNotModified() && (knownIssue != null)) {
+                        // the ticket did not change, so the known issue is just valid for another cache period without parsing anything
+                        KnownIssue revalidatedIssue = knownIssue.revalidated(System.currentTimeMillis());
+                        knownIssues.put(issueKey, revalidatedIssue);
+                        persistentIssueCache.store(issueKey, revalidatedIssue.getIssueData());
+                        return revalidatedIssue.getIssueData();
+                    }
+
+                    Ticket ticket = response.getResult();
+                    ticketStore.putTicket(settings, ticket);
+                    TicketClassification classification = classifyUndecidedTickets(settings, classifyTickets(settings, singletonList(ticket.getTicketNum())),
+                                                                                    singletonList(ticket));
+                    IssueData issueData = getIssueData(ticket, settings, classification);
+                    if (!classification.isComplete()) {
+                        throw new IncompleteIssueException(issueData);
+                    }
+                    rememberIssue(settings, issueData, response.getEntityTag(), response.getLastModified());
+                    return issueData;
+                }
+            });
+        } catch (IncompleteIssueException e) {
+            // served, but neither cached nor remembered, so that the next lookup classifies the issue again
+            return e.getIssueData();
+        } catch (NotFoundException e) {
+            missingIssues.put(issueKey, TRUE);
+            throw e;
+        } catch (Exception e) {
+            if (!httpTransport.isCircuitOpen()) {
+                throw e;
+            }
+            // SourceForge is unavailable, so serve degraded data right away without caching it
+            return getDegradedIssueData(settings, id);
+        }
+    }
+
+    /**
+     * Returns the issue for the specified ID while SourceForge is unavailable.
+     * This is the last known version of the issue, regardless of its age, or a placeholder if the issue is not known.
+     *
+     * @param settings the settings of the connection the issue belongs to
+     * @param id       the ID of the issue
+     * @return the last known issue or a placeholder
+     */
+    @NotNull
+    private IssueData getDegradedIssueData(@NotNull ConnectionSettings settings, @NotNull String id) {
+        KnownIssue knownIssue = knownIssues.get(settings.getIssueKey(id));
+        if (knownIssue != null) {
+            return knownIssue.getIssueData();
+        }
+        Map<String, String> data = new HashMap<String, String>();
+        data.put(SUMMARY_FIELD, "The issue details are not available, as SourceForge is currently unreachable");
+        return new IssueData(id, data, false, false, settings.getIssueUrl(id, false));
+    }
+
+    /**
+     * Returns the issues for the specified IDs that can be served without waiting for a request,
+     * either from the synchronized ticket index, or as known issue in stale-while-revalidate mode.
+     *
+     * @param settings the settings of the connection the issues belong to
+     * @param ids      the IDs of the issues to look up
+     * @return the locally available issues by their ID
+     */
+    @NotNull
+    private Map<String, IssueData> getLocalIssueData(@NotNull ConnectionSettings settings, @NotNull Collection<String> ids) {
+        Map<String, IssueData> indexedIssueData = ticketIndexSynchronizer.getIndexedIssueData(settings, ids);
+        if (indexedIssueData.isEmpty()) {
+            return getKnownIssueData(settings, ids);
+        }
+        if (indexedIssueData.size() == ids.size()) {
+            return indexedIssueData;
+        }
+        List<String> unindexedIds = new ArrayList<String>(ids);
+        unindexedIds.removeAll(indexedIssueData.keySet());
+        Map<String, IssueData> result = new HashMap<String, IssueData>(indexedIssueData);
+        result.putAll(getKnownIssueData(settings, unindexedIds));
+        return result;
+    }
+
+    /**
+     * Returns the issues for the specified IDs that were fetched before and are not too old to be served,
+     * if stale-while-revalidate mode is enabled.
+     * <p/>
+     * Issues that are older than the configured minimum age are refreshed asynchronously in the background,
+     * so that they are up to date when they are requested the next time.
+     *
+     * @param settings the settings of the connection the issues belong to
+     * @param ids      the IDs of the issues to look up
+     * @return the known issues by their ID
+     */
+    @NotNull
+    private Map<String, IssueData> getKnownIssueData(@NotNull ConnectionSettings settings, @NotNull Collection<String> ids) {
+        if (!isStaleWhileRevalidateEnabled()) {
+            return emptyMap();
+        }
+
+        long minAge = TeamCityProperties.getInteger(STALE_WHILE_REVALIDATE_MIN_AGE_PROPERTY, 60) * 1000L;
+        long maxAge = getMaxStaleAge();
+        Map<String, IssueData> result = new HashMap<String, IssueData>();
+        List<String> idsToRefresh = new ArrayList<String>();
+        for (String id : ids) {
+            KnownIssue knownIssue = knownIssues.get(settings.getIssueKey(id));
+            if (knownIssue == null) {
+                continue;
+            }
+            long age = knownIssue.getAge();
+            if (age <= maxAge) {
+                result.put(id, knownIssue.getIssueData());
+                if (age > minAge) {
+                    idsToRefresh.add(id);
+                }
+            }
+        }
+        refreshAsynchronously(settings, idsToRefresh);
+        return result;
+    }
+
+    /**
+     * Fetches the issues for the specified IDs again in the background.
+     * Issues that are currently refreshed already are not refreshed a second time concurrently.
+     *
+     * @param settings the settings of the connection the issues belong to
+     * @param ids      the IDs of the issues to refresh
+     */
+    private void refreshAsynchronously(@NotNull final ConnectionSettings settings, @NotNull Collection<String> ids) {
+        final List<String> idsToRefresh = new ArrayList<String>(ids.size());
+        for (String id : ids) {
+            if (refreshingIssueKeys.putIfAbsent(settings.getIssueKey(id), TRUE) == null) {
+                idsToRefresh.add(id);
+            }
+        }
+        if (idsToRefresh.isEmpty()) {
+            return;
+        }
+
+        Runnable refresh = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (List<String> chunk : splitIntoChunks(settings, idsToRefresh)) {
+                        fetchChunk(settings, chunk, new ArrayList<IssueData>());
+                    }
+                } finally {
+                    for (String id : idsToRefresh) {
+                        refreshingIssueKeys.remove(settings.getIssueKey(id));
+                    }
+                }
+            }
+        };
+        try {
+            refreshExecutor.execute(refresh);
+        } catch (RejectedExecutionException e) {
+            for (String id : idsToRefresh) {
+                refreshingIssueKeys.remove(settings.getIssueKey(id));
+            }
+        }
+    }
+
+    /**
+     * Remembers a freshly fetched issue in the persistent cache and for stale-while-revalidate mode.
+     *
+     * @param settings  the settings of the connection the issue belongs to
+     * @param issueData the fetched issue
+     */
+    private void rememberIssue(@NotNull ConnectionSettings settings, @NotNull IssueData issueData) {
+        rememberIssue(settings, issueData, null, null);
+    }
+
+    /**
+     * Remembers a freshly fetched issue in the persistent cache, for stale-while-revalidate mode
+     * and together with its validators for conditional requests.
+     *
+     * @param settings     the settings of the connection the issue belongs to
+     * @param issueData    the fetched issue
+     * @param entityTag    the entity tag the issue was fetched with, or {@code null} if the server did not send one
+     * @param lastModified the last modification date the issue was fetched with, or {@code null} if the server did not send one
+     */
+    private void rememberIssue(@NotNull ConnectionSettings settings, @NotNull IssueData issueData, @Nullable String entityTag, @Nullable String lastModified) {
+        if (isStaleWhileRevalidateEnabled() || isConditionalRequestsEnabled()) {
+            knownIssues.put(settings.getIssueKey(issueData.getId()),
+                            new KnownIssue(issueData, System.currentTimeMillis(), entityTag, lastModified));
+        }
+        persistentIssueCache.store(settings.getIssueKey(issueData.getId()), issueData);
+    }
+
+    private boolean isStaleWhileRevalidateEnabled() {
+        return TeamCityProperties.getBoolean(STALE_WHILE_REVALIDATE_ENABLED_PROPERTY);
+    }
+
+    private boolean isConditionalRequestsEnabled() {
+        return TeamCityProperties.getBooleanOrTrue(CONDITIONAL_REQUESTS_ENABLED_PROPERTY);
+    }
+
+    private long getMaxStaleAge() {
+        return TeamCityProperties.getInteger(STALE_WHILE_REVALIDATE_MAX_AGE_PROPERTY, 86400) * 1000L;
+    }
+
     @NotNull
     @Override
     public String getUrl(@NotNull String dataVehicleJson, @NotNull String id) {
-        return getIssueUrl(dataVehicleJson, id, false);
+        return getConnectionSettings(dataVehicleJson).getIssueUrl(id, false);
     }
 
     /**
-     * Constructs the URL to the issue with the specified ID, either as browsing variant, or as API variant.
+     * Returns the settings of the connection that is described by the specified data vehicle.
+     * The settings are only resolved once per data vehicle and reused afterwards until they are evicted from the cache.
      *
      * @param dataVehicleJson the {@code JSON} representation of the data vehicle transporting the configuration data
-     * @param id              the ID of the issue to construct the URL for
-     * @param rest            whether to build the browsing variant ({@code false}) or the API variant ({@code true})
-     * @return the constructed URL as string
+     * @return the resolved settings
+     */
+    @NotNull
+    ConnectionSettings getConnectionSettings(@NotNull String dataVehicleJson) {
+        ConnectionSettings settings = connectionSettings.get(dataVehicleJson);
+        if (settings == null) {
+            settings = connectionSettings.putIfAbsent(dataVehicleJson, new ConnectionSettings(dataVehicleJson, this));
+        }
+        return settings;
+    }
+
+    /**
+     * Returns the cache of the metadata of SourceForge projects, that is used to validate the settings of connections.
+     *
+     * @return the cache of the metadata of SourceForge projects
      */
     @NotNull
-    private String getIssueUrl(@NotNull String dataVehicleJson, @NotNull String id, boolean rest) {
-        return format("%s/%s", getTicketToolUrl(getProject(dataVehicleJson), getTicketTool(dataVehicleJson), rest), id);
+    ProjectMetadataCache getProjectMetadataCache() {
+        return projectMetadataCache;
+    }
+
+    /**
+     * Fetches the specified project with its tools.
+     * Concurrent requests for the same project are coalesced into one request.
+     *
+     * @param projectName the unix name of the project, e.&nbsp;g. 'p/my-project'
+     * @return the project
+     * @throws NotFoundException if the project does not exist
+     * @throws IOException       if the project could not be fetched
+     */
+    @NotNull
+    Project fetchProject(@NotNull String projectName) throws IOException {
+        final String projectUrl = getProjectUrl(projectName, true);
+        return requestCoalescer.execute(projectUrl, new Callable<Project>() {
+            @NotNull
+            @Override
+            public Project call() throws IOException {
+                Project project = fetchHttp(PROJECT, projectUrl, new ResponseHandler<Project>() {
+                    @Nullable
+                    @Override
+                    public Project handle(@NotNull InputStream body) throws IOException {
+                        return GSON.fromJson(new InputStreamReader(body, "UTF-8"), Project.class);
+                    }
+                });
+                if (project == null) {
+                    throw new RetrieveIssueException(format("The response for '%s' does not contain a project", projectUrl));
+                }
+                return project;
+            }
+        });
+    }
+
+    /**
+     * Validates the syntactical correctness of the specified search query by triggering a search through the API.
+     * The condition that ticket_num equals 1 is added to speed up the search, as only the syntax is of interest,
+     * not the actual result. Successfully validated queries are cached for a short time.
+     *
+     * @param projectName the name of the project to search in
+     * @param ticketTool  the ticket tool to search in
+     * @param query       the search query to validate
+     * @throws IOException if the search fails, e.&nbsp;g. because the query is invalid
+     */
+    void validateSearchQuery(@NotNull String projectName, @NotNull String ticketTool, @NotNull String query) throws IOException {
+        String searchUrl = getSearchUrl(projectName, ticketTool, format("(%s) && ticket_num:1", query));
+        if (validatedSearchUrls.get(searchUrl) == null) {
+            fetchHttp(SEARCH, searchUrl, IGNORING_HANDLER);
+            validatedSearchUrls.put(searchUrl, TRUE);
+        }
+    }
+
+    /**
+     * Runs the specified validation of settings in the background,
+     * so that independent validations that need requests can run concurrently.
+     * If too many validations are pending, the validation is run on the calling thread.
+     *
+     * @param validation the validation to run
+     * @param <T>        the type of the result of the validation
+     * @return the pending result of the validation
+     */
+    @NotNull
+    <T> Future<T> validateAsynchronously(@NotNull Callable<T> validation) {
+        return validationExecutor.submit(validation);
     }
 
     /**
@@ -118,8 +630,19 @@ public class SourceForgeIssueFetcher extends AbstractIssueFetcher {
      */
     @NotNull
     String getSearchUrl(@NotNull String project, @NotNull String ticketTool, @NotNull String query) {
+        return format("%s/search?q=%s", getTicketToolUrl(project, ticketTool, true), encodeQuery(query));
+    }
+
+    /**
+     * URL encodes the specified search query.
+     *
+     * @param query the search query to encode
+     * @return the encoded search query
+     */
+    @NotNull
+    static String encodeQuery(@NotNull String query) {
         try {
-            return format("%s/search?q=%s", getTicketToolUrl(project, ticketTool, true), URLEncoder.encode(query, "UTF-8"));
+            return URLEncoder.encode(query, "UTF-8");
         } catch (UnsupportedEncodingException e) {
             throw new AssertionError("UTF-8 should be supported on all JVMs", e);
         }
@@ -134,7 +657,7 @@ public class SourceForgeIssueFetcher extends AbstractIssueFetcher {
      * @return the constructed URL as string
      */
     @NotNull
-    private String getTicketToolUrl(@NotNull String project, @NotNull String ticketTool, boolean rest) {
+    String getTicketToolUrl(@NotNull String project, @NotNull String ticketTool, boolean rest) {
         return format("%s/%s", getProjectUrl(project, rest), ticketTool);
     }
 
@@ -147,7 +670,17 @@ public class SourceForgeIssueFetcher extends AbstractIssueFetcher {
      */
     @NotNull
     String getProjectUrl(@NotNull String project, boolean rest) {
-        return format("https://sourceforge.net/%s%s", rest ? "rest/" : "", project);
+        return format("%s/%s%s", getBaseUrl(), rest ? "rest/" : "", project);
+    }
+
+    /**
+     * Returns the base URL of SourceForge, which is configurable to be able to use a mirror or a local stub server.
+     *
+     * @return the base URL of SourceForge without trailing slash
+     */
+    @NotNull
+    private static String getBaseUrl() {
+        return removeEnd(TeamCityProperties.getProperty(BASE_URL_PROPERTY, "https://sourceforge.net"), "/");
     }
 
     /**
@@ -161,204 +694,887 @@ public class SourceForgeIssueFetcher extends AbstractIssueFetcher {
      */
     @Nullable
     @Override
-    public Collection<IssueData> getIssuesInBatch(@NotNull final String dataVehicleJson, @NotNull Collection<String> ids, @Nullable Credentials credentials) {
-        return super.defaultGetIssuesInBatch(dataVehicleJson, ids, new BatchFetchFunction() {
-            @NotNull
+    public Collection<IssueData> getIssuesInBatch(@NotNull String dataVehicleJson, @NotNull Collection<String> ids, @Nullable Credentials credentials) {
+        return fetchIssuesInBatch(dataVehicleJson, ids);
+    }
+
+    /**
+     * Fetches the issues corresponding to the specified IDs that are not cached already asynchronously,
+     * so that a caller can overlap the batch with other lookups.
+     * The issues are fetched on a thread of this fetcher with the request priority of the calling thread,
+     * or on the calling thread itself if too many asynchronous lookups are pending.
+     *
+     * @param dataVehicleJson the {@code JSON} representation of the data vehicle transporting the configuration data
+     * @param ids             the IDs to fetch the issues for
+     * @param credentials     the credentials to use for authentication
+     * @return the future issues
+     */
+    @NotNull
+    public Future<Collection<IssueData>> getIssuesInBatchAsync(@NotNull final String dataVehicleJson, @NotNull final Collection<String> ids,
+                                                               @Nullable Credentials credentials) {
+        return submitAsync(asyncExecutor, new Callable<Collection<IssueData>>() {
+            @Nullable
             @Override
-            public List<IssueData> batchFetch(@NotNull Collection<String> ids) {
-                try {
-                    StringBuilder queryBuilder = new StringBuilder();
-                    for (String id : ids) {
-                        queryBuilder.append("ticket_num:").append(id).append(" || ");
-                    }
-                    if (ids.size() > 0) {
-                        queryBuilder.delete(queryBuilder.length() - 4, queryBuilder.length());
-                    }
-                    String searchUrl = getSearchUrl(getProject(dataVehicleJson), getTicketTool(dataVehicleJson), queryBuilder.toString());
-                    InputStream issueStream = fetchHttpFile(searchUrl);
-                    Collection<Ticket> tickets = GSON.fromJson(new InputStreamReader(issueStream), SearchResult.class).getTickets();
-                    List<IssueData> result = new ArrayList<IssueData>(tickets.size());
-                    for (Ticket ticket : tickets) {
-                        result.add(getIssueData(ticket, dataVehicleJson));
-                    }
-                    return result;
-                } catch (IOException e) {
-                    return emptyList();
-                }
+            public Collection<IssueData> call() {
+                return fetchIssuesInBatch(dataVehicleJson, ids);
             }
         });
     }
 
     /**
-     * Transforms a {@code Ticket} into an {@code IssueData}.
+     * Fetches the issues corresponding to the specified IDs through the issue cache of TeamCity.
+     * The issues are cached under the same connection specific keys as single issues,
+     * as the default batch implementation would cache them by their URL, which is the same for all connections
+     * to the same ticket tool.
      *
-     * @param ticket          the ticket to be transformed
      * @param dataVehicleJson the {@code JSON} representation of the data vehicle transporting the configuration data
-     * @return the transformed issue data
+     * @param ids             the IDs to fetch the issues for
+     * @return the fetched issues
      */
     @NotNull
-    private IssueData getIssueData(@NotNull Ticket ticket, @NotNull String dataVehicleJson) {
-        Map<String, String> data = new HashMap<String, String>();
-        data.put(TYPE_FIELD, getCustomValue(getType(dataVehicleJson), ticket));
-        data.put(SUMMARY_FIELD, ticket.getSummary());
-        data.put(STATE_FIELD, ticket.getStatus());
-        data.put(PRIORITY_FIELD, getCustomValue(getPriority(dataVehicleJson), ticket));
-        data.put(SEVERITY_FIELD, getCustomValue(getSeverity(dataVehicleJson), ticket));
-        data.put(VOTES_FIELD, String.valueOf(ticket.getVotes()));
-        data.put(LABELS_FIELD, join(ticket.getLabels().iterator(), ", "));
+    private Collection<IssueData> fetchIssuesInBatch(@NotNull String dataVehicleJson, @NotNull Collection<String> ids) {
+        ConnectionSettings settings = getConnectionSettings(dataVehicleJson);
+        metrics.recordIssueLookups(ids.size());
 
-        String ticketNum = ticket.getTicketNum();
+        // known issues are served before the issue cache of TeamCity, as it would keep a stale issue
+        // for its whole time to live, even after the issue was refreshed in the background
+        Map<String, IssueData> knownIssueData = getKnownIssueData(settings, ids);
+        List<IssueData> result = new ArrayList<IssueData>(knownIssueData.values());
+        List<String> idsToFetch = new ArrayList<String>(ids.size());
+        for (String id : ids) {
+            if (!knownIssueData.containsKey(id)) {
+                IssueData cachedIssueData = getCachedIssueData(settings.getIssueKey(id));
+                if (cachedIssueData == null) {
+                    idsToFetch.add(id);
+                } else {
+                    result.add(cachedIssueData);
+                }
+            }
+        }
+        metrics.recordIssueFetches(idsToFetch.size());
+        if (idsToFetch.isEmpty()) {
+            return result;
+        }
 
-        boolean resolved = false;
-        String resolvedQuery = getResolvedQuery(dataVehicleJson);
-        if (isNotBlank(resolvedQuery)) {
-            resolved = checkSearchCondition(dataVehicleJson, ticketNum, resolvedQuery, false);
+        // issues whose classification is incomplete are added to the result, but must not be cached by TeamCity
+        Collection<IssueData> incompleteIssueData = new ConcurrentLinkedQueue<IssueData>();
+        for (IssueData issueData : fetchBatch(settings, idsToFetch, incompleteIssueData)) {
+            cacheIssueData(settings.getIssueKey(issueData.getId()), issueData);
+            result.add(issueData);
         }
+        result.addAll(incompleteIssueData);
+        return result;
+    }
 
-        boolean featureRequest = false;
-        String featureRequestQuery = getFeatureRequestQuery(dataVehicleJson);
-        if ("true".equals(featureRequestQuery)) {
-            featureRequest = true;
-        } else if (isNotEmpty(featureRequestQuery)) {
-            featureRequest = checkSearchCondition(dataVehicleJson, ticketNum, featureRequestQuery, false);
+    /**
+     * Returns the issue that is cached by TeamCity under the specified key without fetching it.
+     *
+     * @param issueKey the connection specific key of the issue
+     * @return the cached issue, or {@code null} if the issue is not cached
+     */
+    @Nullable
+    private IssueData getCachedIssueData(@NotNull String issueKey) {
+        try {
+            return getFromCacheOrFetch(issueKey, new FetchFunction() {
+                @NotNull
+                @Override
+                public IssueData fetch() {
+                    throw NotCachedException.INSTANCE;
+                }
+            });
+        } catch (Exception e) {
+            return null;
         }
+    }
 
-        return new IssueData(ticketNum, data, resolved, featureRequest, getUrl(dataVehicleJson, ticketNum));
+    /**
+     * Caches the specified issue in the issue cache of TeamCity under the specified key, unless an issue is cached already.
+     *
+     * @param issueKey  the connection specific key of the issue
+     * @param issueData the issue to cache
+     */
+    private void cacheIssueData(@NotNull String issueKey, @NotNull final IssueData issueData) {
+        try {
+            getFromCacheOrFetch(issueKey, new FetchFunction() {
+                @NotNull
+                @Override
+                public IssueData fetch() {
+                    return issueData;
+                }
+            });
+        } catch (Exception e) {
+            // the issue is just fetched again when it is requested
+        }
     }
 
     /**
-     * Retrieve the custom value for some field from the specified ticket.
-     * <p/>
-     * Allowed syntax for the field value:
-     * <p><dl>
-     * <dt><b>labels:&lt;regex&gt;[:&lt;default&gt;]</b></dt>
-     * <dd>
-     * The value is defined by one or more labels.<br/>
-     * If multiple labels are found, they are joined together with commas.<br/>
-     * If no label is found, the default value is used, if one is defined.<br/>
-     * The regex must not contain any colons. If you need to match a colon, use '\u005c003a' instead.
-     * <ul>
-     * <li>If no regex is given, all labels are used, e.&nbsp;g. 'labels:' or 'labels::bug'</li>
-     * <li>
-     * If a regex without group is given, all labels matching the regex are used completely,
-     * e.&nbsp;g. 'labels:.+_bug' or 'labels:.+_bug:general_bug'<bs:help file="Integrating+TeamCity+with+Issue+Tracker"/>
-     * </li>
-     * <li>
-     * If a regex with groups is given, all labels matching the regex are used, but only their first group,
-     * e.&nbsp;g. 'labels:type_(.+)' or 'labels:type_(.+):bug'<bs:help file="Integrating+TeamCity+with+Issue+Tracker"/>
-     * </li>
-     * </ul>
-     * </dd>
-     * <dt><b>custom:&lt;custom field name&gt;[:&lt;default&gt;]</b></dt>
-     * <dd>
-     * The value is defined by the value of a custom field, e.&nbsp;g. 'custom:_type' or 'custom:_type:bug'<br/>
-     * If the custom field is not found, not set or empty, the default value is used, if one is defined.
-     * </dd>
-     * <dt><b>&lt;fixed string&gt;</b></dt>
-     * <dd>All issues have the same value defined here, e.&nbsp;g. 'bug'</dd>
-     * </dl>
-     *
-     * @param fieldValue the custom value field specification
-     * @param ticket     the ticket to retrieve the data from
-     * @return the retrieved custom value
+     * Fetches the issues corresponding to the specified IDs for the specified connection, bypassing the issue cache
+     * of TeamCity. Known missing issues are skipped, locally available issues are served right away and the others
+     * are fetched in concurrently executed chunks.
+     *
+     * @param settings the settings of the connection to fetch the issues for
+     * @param ids      the IDs to fetch the issues for
+     * @return the fetched issues, a failing chunk only loses its own issues
      */
-    @Nullable
-    private String getCustomValue(@NotNull String fieldValue, @NotNull Ticket ticket) {
-        String[] fieldValueParts = fieldValue.split(":", 3);
+    @NotNull
+    List<IssueData> fetchBatch(@NotNull ConnectionSettings settings, @NotNull Collection<String> ids) {
+        Collection<IssueData> incompleteIssueData = new ConcurrentLinkedQueue<IssueData>();
+        List<IssueData> result = fetchBatch(settings, ids, incompleteIssueData);
+        if (incompleteIssueData.isEmpty()) {
+            return result;
+        }
+        result = new ArrayList<IssueData>(result);
+        result.addAll(incompleteIssueData);
+        return result;
+    }
+
+    /**
+     * Fetches the issues corresponding to the specified IDs for the specified connection, bypassing the issue cache
+     * of TeamCity. Known missing issues are skipped, locally available issues are served right away and the others
+     * are fetched in concurrently executed chunks. Issues whose classification could not be completed
+     * are not returned, but added to the specified collection, as they must not be cached.
+     *
+     * @param settings            the settings of the connection to fetch the issues for
+     * @param ids                 the IDs to fetch the issues for
+     * @param incompleteIssueData the thread-safe collection the issues with incomplete classification are added to
+     * @return the fetched issues, a failing chunk only loses its own issues
+     */
+    @NotNull
+    private List<IssueData> fetchBatch(@NotNull final ConnectionSettings settings, @NotNull Collection<String> ids,
+                                       @NotNull final Collection<IssueData> incompleteIssueData) {
+        metrics.recordBatchSize(ids.size());
+
+        // skip the issues that are known to be missing
+        ids = withoutMissingIssues(settings, ids);
+
+        // serve the locally available issues right away and only fetch the others
+        Map<String, IssueData> localIssueData = getLocalIssueData(settings, ids);
+        if (!localIssueData.isEmpty()) {
+            ids = new ArrayList<String>(ids);
+            ids.removeAll(localIssueData.keySet());
+            if (ids.isEmpty()) {
+                return new ArrayList<IssueData>(localIssueData.values());
+            }
+        }
+
+        List<List<String>> chunks = splitIntoChunks(settings, ids);
+        if (chunks.isEmpty()) {
+            return new ArrayList<IssueData>(localIssueData.values());
+        }
+        if (chunks.size() == 1) {
+            List<IssueData> result = fetchChunk(settings, chunks.get(0), incompleteIssueData);
+            if (!localIssueData.isEmpty()) {
+                result = new ArrayList<IssueData>(result);
+                result.addAll(localIssueData.values());
+            }
+            return result;
+        }
 
-        // if there is no colon, this is the fixed string case, so simple return the specification
-        if (fieldValueParts.length == 1) {
-            return fieldValue;
+        // fetch all chunks concurrently, a failing chunk only loses its own issues
+        List<Future<List<IssueData>>> chunkResults = new ArrayList<Future<List<IssueData>>>(chunks.size());
+        for (final List<String> chunk : chunks) {
+            chunkResults.add(batchExecutor.submit(new Callable<List<IssueData>>() {
+                @Override
+                public List<IssueData> call() {
+                    return fetchChunk(settings, chunk, incompleteIssueData);
+                }
+            }));
         }
+        List<IssueData> result = new ArrayList<IssueData>(localIssueData.values());
+        for (Future<List<IssueData>> chunkResult : chunkResults) {
+            try {
+                result.addAll(chunkResult.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // the issues of this chunk are just missing in the result
+            }
+        }
+        return result;
+    }
 
-        if (fieldValueParts[0].equals("labels")) {
-            String labelRegex = fieldValueParts[1];
-            if (isEmpty(labelRegex)) {
-                // if no regex is given, just use all labels
-                String labels = join(ticket.getLabels().iterator(), ", ");
-                if (isNotBlank(labels)) {
-                    return labels;
+    /**
+     * Fetches the issues corresponding to the specified IDs with one search and classifies them.
+     * Each fetched ticket is projected into an issue as soon as it is decoded, so the tickets are not held all at once.
+     * Tickets that were fetched recently, possibly for another connection to the same ticket tool, are not fetched again,
+     * but just projected into issues of the specified connection.
+     * The requests are done with background priority, so that they do not delay interactive issue lookups.
+     * Issues whose classification could not be completed are neither remembered nor returned,
+     * but added to the specified collection.
+     *
+     * @param settings            the settings of the connection to fetch the issues for
+     * @param ids                 the IDs to fetch the issues for
+     * @param incompleteIssueData the collection the issues with incomplete classification are added to
+     * @return the fetched issues, or an empty list in case of server error
+     */
+    @NotNull
+    private List<IssueData> fetchChunk(@NotNull final ConnectionSettings settings, @NotNull final Collection<String> ids,
+                                       @NotNull Collection<IssueData> incompleteIssueData) {
+        Priority previousPriority = RateLimiter.setPriority(BACKGROUND);
+        try {
+            final List<Ticket> storedTickets = new ArrayList<Ticket>(ids.size());
+            final List<String> idsToFetch = new ArrayList<String>(ids.size());
+            for (String id : ids) {
+                Ticket storedTicket = ticketStore.getTicket(settings, id);
+                if (storedTicket == null) {
+                    idsToFetch.add(id);
+                } else {
+                    storedTickets.add(storedTicket);
                 }
-                // if there are no labels present, return the default value if specified
-                if (fieldValueParts.length > 2) {
-                    return fieldValueParts[2];
+            }
+
+            // concurrent fetches of the same chunk for the same connection share the projected issues
+            String chunkKey = format("%s#%s", settings.getSearchUrl(getTicketNumQuery(ids), ids.size()), settings.getConnectionId());
+            ProjectedChunk chunk = requestCoalescer.execute(chunkKey, new Callable<ProjectedChunk>() {
+                @NotNull
+                @Override
+                public ProjectedChunk call() throws IOException {
+                    return projectChunk(settings, ids, storedTickets, idsToFetch);
                 }
+            });
+            if (!chunk.isComplete()) {
+                incompleteIssueData.addAll(chunk.getIssueData());
+                return emptyList();
+            }
+            for (IssueData issueData : chunk.getIssueData()) {
+                rememberIssue(settings, issueData);
+            }
+            return chunk.getIssueData();
+        } catch (RetrieveIssueException e) {
+            metrics.recordBatchError();
+            return emptyList();
+        } catch (IOException e) {
+            metrics.recordBatchError();
+            return emptyList();
+        } finally {
+            RateLimiter.setPriority(previousPriority);
+        }
+    }
+
+    /**
+     * Classifies the tickets of a chunk and projects them into issues of the specified connection.
+     * <p/>
+     * The classification only needs the ticket numbers, so it is done before the missing tickets are fetched.
+     * This way each fetched ticket is projected into a compact issue as soon as it is decoded from the search result,
+     * so that the decoded tickets of the whole result are not held at once. Only the rare tickets that the local
+     * evaluation of a query cannot decide are held until they are classified with a search afterwards.
+     *
+     * @param settings      the settings of the connection to fetch the issues for
+     * @param ids           the IDs of all issues of the chunk
+     * @param storedTickets the tickets of the chunk that are stored already
+     * @param idsToFetch    the IDs of the issues of the chunk whose tickets have to be fetched
+     * @return the projected issues
+     * @throws IOException if the search for the missing tickets fails
+     */
+    @NotNull
+    private ProjectedChunk projectChunk(@NotNull final ConnectionSettings settings, @NotNull Collection<String> ids,
+                                        @NotNull Collection<Ticket> storedTickets, @NotNull Collection<String> idsToFetch) throws IOException {
+        final TicketClassification classification = classifyTickets(settings, ids);
+        final List<IssueData> result = new ArrayList<IssueData>(ids.size());
+        final List<Ticket> undecidedTickets = new ArrayList<Ticket>();
+        for (Ticket storedTicket : storedTickets) {
+            if (classification.isDecided(storedTicket)) {
+                result.add(getIssueData(storedTicket, settings, classification));
             } else {
-                // if there is a regex given, search all matching labels
-                Pattern labelPattern = safeCompilePattern(labelRegex);
-                List<String> matchingLabels = new ArrayList<String>();
-                for (String label : ticket.getLabels()) {
-                    Matcher labelMatcher = labelPattern.matcher(label);
-                    if (labelMatcher.matches()) {
-                        // use the first group if present, or the whole match otherwise
-                        if (labelMatcher.groupCount() > 0) {
-                            matchingLabels.add(labelMatcher.group(1));
-                        } else {
-                            matchingLabels.add(labelMatcher.group());
-                        }
+                undecidedTickets.add(storedTicket);
+            }
+        }
+
+        if (!idsToFetch.isEmpty()) {
+            final Set<String> missingIds = new HashSet<String>(idsToFetch);
+            searchTickets(settings.getSearchUrl(getTicketNumQuery(idsToFetch), idsToFetch.size()), new TicketHandler() {
+                @Override
+                public void handle(@NotNull Ticket ticket) {
+                    ticketStore.putTicket(settings, ticket);
+                    classification.rememberMatches(ticketStore, settings, ticket.getTicketNum());
+                    if (classification.isDecided(ticket)) {
+                        result.add(getIssueData(ticket, settings, classification));
+                    } else {
+                        undecidedTickets.add(ticket);
                     }
+                    missingIds.remove(ticket.getTicketNum());
                 }
-                // join the matched labels together
-                String labels = join(matchingLabels.iterator(), ", ");
-                if (isNotBlank(labels)) {
-                    return labels;
-                }
-                // if no labels were found, return the default value if specified
-                if (fieldValueParts.length > 2) {
-                    return fieldValueParts[2];
-                }
+            });
+            // the search succeeded, so the IDs it did not return do not exist and are not asked for again for a while
+            for (String missingId : missingIds) {
+                missingIssues.put(settings.getIssueKey(missingId), TRUE);
             }
-        } else if (fieldValueParts[0].equals("custom")) {
-            String customFieldValue = ticket.getCustomFields().get(fieldValueParts[1]);
-            if (isNotBlank(customFieldValue)) {
-                return customFieldValue;
+        }
+
+        TicketClassification completeClassification = classifyUndecidedTickets(settings, classification, undecidedTickets);
+        for (Ticket undecidedTicket : undecidedTickets) {
+            result.add(getIssueData(undecidedTicket, settings, completeClassification));
+        }
+        return new ProjectedChunk(result, completeClassification.isComplete());
+    }
+
+    /**
+     * Stores the specified freshly fetched tickets, so that they are reused by all connections to the same ticket tool.
+     *
+     * @param settings the settings of the connection the tickets were fetched for
+     * @param tickets  the fetched tickets
+     */
+    void storeTickets(@NotNull ConnectionSettings settings, @NotNull Collection<Ticket> tickets) {
+        for (Ticket ticket : tickets) {
+            ticketStore.putTicket(settings, ticket);
+        }
+    }
+
+    /**
+     * Removes the IDs of the issues that are known to be missing from the specified IDs.
+     *
+     * @param settings the settings of the connection the issues belong to
+     * @param ids      the IDs to filter
+     * @return the IDs of the issues that are not known to be missing
+     */
+    @NotNull
+    private Collection<String> withoutMissingIssues(@NotNull ConnectionSettings settings, @NotNull Collection<String> ids) {
+        List<String> result = new ArrayList<String>(ids.size());
+        for (String id : ids) {
+            if (missingIssues.get(settings.getIssueKey(id)) == null) {
+                result.add(id);
+            }
+        }
+        return result.size() == ids.size() ? ids : result;
+    }
+
+    /**
+     * Splits the specified IDs into chunks that are small enough to be fetched with one search each.
+     * <p/>
+     * A chunk contains at most as many IDs as configured by {@value #BATCH_MAX_IDS_PROPERTY} and is small enough,
+     * that none of the search URLs used to fetch and classify its issues is longer than configured by
+     * {@value #BATCH_MAX_URL_LENGTH_PROPERTY}. Each chunk contains at least one ID, even if a single ID already exceeds
+     * the maximum URL length.
+     *
+     * @param settings the settings of the connection to fetch the issues for
+     * @param ids      the IDs to split into chunks
+     * @return the chunks of IDs
+     */
+    @NotNull
+    private List<List<String>> splitIntoChunks(@NotNull ConnectionSettings settings, @NotNull Collection<String> ids) {
+        int maxIds = Math.max(1, TeamCityProperties.getInteger(BATCH_MAX_IDS_PROPERTY, 50));
+        int maxUrlLength = TeamCityProperties.getInteger(BATCH_MAX_URL_LENGTH_PROPERTY, 2000);
+
+        // the longest URL of a chunk is the search with the longest query that is combined with the ticket numbers
+        String longestQuery = "";
+        String resolvedQuery = settings.getResolvedQuery();
+        if (isNotBlank(resolvedQuery)) {
+            longestQuery = resolvedQuery;
+        }
+        String featureRequestQuery = settings.getFeatureRequestQuery();
+        if (isNotEmpty(featureRequestQuery) && !"true".equals(featureRequestQuery) && (featureRequestQuery.length() > longestQuery.length())) {
+            longestQuery = featureRequestQuery;
+        }
+        int baseUrlLength = settings.getSearchUrl(format("(%s) && ()", longestQuery), maxIds).length();
+
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        List<String> chunk = new ArrayList<String>();
+        int urlLength = baseUrlLength;
+        for (String id : ids) {
+            // the length of the separator is added for each ID, so the calculated length is slightly too big, never too small
+            int idLength = encodeQuery(format("ticket_num:%s || ", id)).length();
+            if (!chunk.isEmpty() && ((chunk.size() >= maxIds) || (urlLength + idLength > maxUrlLength))) {
+                chunks.add(chunk);
+                chunk = new ArrayList<String>();
+                urlLength = baseUrlLength;
             }
-            // if the custom field is not found, not set or empty, return the default value if specified
-            if (fieldValueParts.length > 2) {
-                return fieldValueParts[2];
+            chunk.add(id);
+            urlLength += idLength;
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Builds a search query that matches exactly the tickets with the specified ticket numbers.
+     *
+     * @param ticketNums the ticket numbers to build the search query for
+     * @return the built search query
+     */
+    @NotNull
+    private String getTicketNumQuery(@NotNull Collection<String> ticketNums) {
+        StringBuilder queryBuilder = new StringBuilder();
+        for (String ticketNum : ticketNums) {
+            queryBuilder.append("ticket_num:").append(ticketNum).append(" || ");
+        }
+        if (ticketNums.size() > 0) {
+            queryBuilder.delete(queryBuilder.length() - 4, queryBuilder.length());
+        }
+        return queryBuilder.toString();
+    }
+
+    /**
+     * Classifies the tickets with the specified numbers as resolved and as feature request.
+     * <p/>
+     * The tickets are classified as one batch, so that independent of the amount of tickets
+     * at most one search for the resolved query and one search for the feature request query is done.
+     * Queries that can be evaluated locally need no search at all, they are evaluated against each ticket
+     * when it is projected, so the classification only needs the ticket numbers, not the tickets themselves.
+     *
+     * @param settings   the settings of the connection the tickets belong to
+     * @param ticketNums the numbers of the tickets to classify
+     * @return the classification of the tickets, where a search that failed with a server error matches no ticket
+     */
+    @NotNull
+    TicketClassification classifyTickets(@NotNull final ConnectionSettings settings, @NotNull final Collection<String> ticketNums) {
+        String resolvedQuery = isNotBlank(settings.getResolvedQuery()) ? settings.getResolvedQuery() : null;
+        final String featureRequestQuery = isNotEmpty(settings.getFeatureRequestQuery()) ? settings.getFeatureRequestQuery() : null;
+        boolean allFeatureRequests = "true".equals(featureRequestQuery);
+        SearchQueryEvaluator resolvedEvaluator = resolvedQuery == null ? null : getEvaluator(resolvedQuery);
+        SearchQueryEvaluator featureRequestEvaluator = (featureRequestQuery == null) || allFeatureRequests ? null : getEvaluator(featureRequestQuery);
+        String resolvedSearchQuery = (resolvedQuery != null) && (resolvedEvaluator == null) ? resolvedQuery : null;
+        String featureRequestSearchQuery = (featureRequestQuery != null) && !allFeatureRequests && (featureRequestEvaluator == null) ? featureRequestQuery : null;
+
+        // if both queries need a search, the feature request search is done concurrently with the resolved search
+        Future<Set<String>> featureRequestSearch = null;
+        if ((resolvedSearchQuery != null) && (featureRequestSearchQuery != null)) {
+            featureRequestSearch = submitAsync(searchExecutor, new Callable<Set<String>>() {
+                @Nullable
+                @Override
+                public Set<String> call() {
+                    return findMatchingTicketNums(settings, ticketNums, featureRequestQuery);
+                }
+            });
+        }
+
+        Set<String> resolvedTicketNums = null;
+        if (resolvedSearchQuery != null) {
+            resolvedTicketNums = findMatchingTicketNums(settings, ticketNums, resolvedSearchQuery);
+        }
+
+        Set<String> featureRequestTicketNums = null;
+        if (featureRequestSearch != null) {
+            featureRequestTicketNums = awaitSearch(featureRequestSearch);
+        } else if (featureRequestSearchQuery != null) {
+            featureRequestTicketNums = findMatchingTicketNums(settings, ticketNums, featureRequestSearchQuery);
+        }
+
+        return new TicketClassification(new QueryClassification(resolvedQuery, resolvedEvaluator, resolvedSearchQuery != null, resolvedTicketNums),
+                                        new QueryClassification(allFeatureRequests ? null : featureRequestQuery, featureRequestEvaluator,
+                                                                featureRequestSearchQuery != null, featureRequestTicketNums),
+                                        allFeatureRequests);
+    }
+
+    /**
+     * Classifies the specified tickets as far as the local evaluation of the queries of the specified classification
+     * cannot decide them, with one search for each such query.
+     *
+     * @param settings       the settings of the connection the tickets belong to
+     * @param classification the classification of the tickets by their numbers
+     * @param tickets        the tickets to classify
+     * @return the classification that also decides the specified tickets
+     */
+    @NotNull
+    TicketClassification classifyUndecidedTickets(@NotNull ConnectionSettings settings, @NotNull TicketClassification classification,
+                                                  @NotNull Collection<Ticket> tickets) {
+        QueryClassification resolved = classifyUndecidedTickets(settings, classification.resolved, tickets);
+        QueryClassification featureRequest = classifyUndecidedTickets(settings, classification.featureRequest, tickets);
+        if ((resolved == classification.resolved) && (featureRequest == classification.featureRequest)) {
+            return classification;
+        }
+        return new TicketClassification(resolved, featureRequest, classification.allFeatureRequests);
+    }
+
+    @NotNull
+    private QueryClassification classifyUndecidedTickets(@NotNull ConnectionSettings settings, @NotNull QueryClassification classification,
+                                                         @NotNull Collection<Ticket> tickets) {
+        String query = classification.getUndecidedQuery();
+        if (query == null) {
+            return classification;
+        }
+        List<String> undecidedTicketNums = new ArrayList<String>();
+        for (Ticket ticket : tickets) {
+            if (!classification.isDecided(ticket)) {
+                undecidedTicketNums.add(ticket.getTicketNum());
             }
-        } else {
-            // there is a colon present, but none of the defined prefixes matches,
-            // so we are in the fixed string case again, simply return specification
-            return fieldValue;
         }
+        if (undecidedTicketNums.isEmpty()) {
+            return classification;
+        }
+        return classification.withSearchResult(findMatchingTicketNums(settings, undecidedTicketNums, query));
+    }
 
-        return null;
+    /**
+     * Waits for the result of a concurrently executed search for matching tickets.
+     *
+     * @param search the future result of the search
+     * @return the numbers of the matching tickets, or {@code null} if the search failed or waiting was interrupted
+     */
+    @Nullable
+    private static Set<String> awaitSearch(@NotNull Future<Set<String>> search) {
+        try {
+            return search.get();
+        } catch (InterruptedException e) {
+            search.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
     }
 
     /**
-     * Check whether the ticket with the specified ticket number is included in the specified search query.
+     * Returns the evaluator for the specified search query, if local evaluation is enabled and supports the query.
      *
-     * @param dataVehicleJson the {@code JSON} representation of the data vehicle transporting the configuration data
-     * @param ticketNum       the number of the ticket to check against the search query
-     * @param searchQuery     the search query to test the ticket against
-     * @param defaultValue    the default value that should be returned if there was an unexpected server error
-     * @return whether the ticket is included in the search query or the default value in case of server error
+     * @param searchQuery the search query
+     * @return the evaluator for the search query, or {@code null} if the query has to be evaluated with a search
+     */
+    @Nullable
+    private static SearchQueryEvaluator getEvaluator(@NotNull String searchQuery) {
+        return TeamCityProperties.getBooleanOrTrue(LOCAL_QUERIES_ENABLED_PROPERTY) ? SearchQueryEvaluator.forQuery(searchQuery) : null;
+    }
+
+    /**
+     * Transforms a {@code Ticket} into an {@code IssueData}.
+     * The issue data is backed by a {@link CompactIssue}, which shares the labels with the ticket.
+     *
+     * @param ticket         the ticket to be transformed
+     * @param settings       the settings of the connection the ticket belongs to
+     * @param classification the classification that includes the ticket
+     * @return the transformed issue data
+     */
+    @NotNull
+    IssueData getIssueData(@NotNull Ticket ticket, @NotNull ConnectionSettings settings, @NotNull TicketClassification classification) {
+        String ticketNum = ticket.getTicketNum();
+        return new CompactIssue(ticketNum, ticket.getSummary(), ticket.getStatus(),
+                                settings.getTypeExtractor().extract(ticket),
+                                settings.getPriorityExtractor().extract(ticket),
+                                settings.getSeverityExtractor().extract(ticket),
+                                ticket.getVotes(), ticket.getJoinedLabels(),
+                                classification.isResolved(ticket), classification.isFeatureRequest(ticket),
+                                settings.getIssueUrl(ticketNum, false)).toIssueData();
+    }
+
+    /**
+     * Determines which of the tickets with the specified numbers are included in the specified search query.
+     * <p/>
+     * This is done with one search, independent of the amount of tickets. Stored tickets that are known to match
+     * or not to match the search query, e.&nbsp;g. from another connection with the same query, are not searched.
+     *
+     * @param settings    the settings of the connection the tickets belong to
+     * @param ticketNums  the numbers of the tickets to check against the search query
+     * @param searchQuery the search query to test the tickets against
+     * @return the numbers of the tickets that are included in the search query, or {@code null} in case of server error
      */
-    private boolean checkSearchCondition(@NotNull String dataVehicleJson, @NotNull String ticketNum, @NotNull String searchQuery, boolean defaultValue) {
+    @Nullable
+    private Set<String> findMatchingTicketNums(@NotNull ConnectionSettings settings, @NotNull Collection<String> ticketNums, @NotNull String searchQuery) {
+        if (ticketNums.isEmpty()) {
+            return emptySet();
+        }
+        Set<String> matchingTicketNums = new HashSet<String>();
+        List<String> unknownTicketNums = new ArrayList<String>(ticketNums.size());
+        for (String ticketNum : ticketNums) {
+            Boolean matches = ticketStore.matches(settings, ticketNum, searchQuery);
+            if (matches == null) {
+                unknownTicketNums.add(ticketNum);
+            } else if (matches) {
+                matchingTicketNums.add(ticketNum);
+            }
+        }
+        if (unknownTicketNums.isEmpty()) {
+            return matchingTicketNums;
+        }
         try {
-            String searchUrl = getSearchUrl(getProject(dataVehicleJson), getTicketTool(dataVehicleJson), format("(%s) && ticket_num:%s", searchQuery, ticketNum));
-            InputStream searchResultStream = fetchHttpFile(searchUrl);
-            SearchResult searchResult = GSON.fromJson(new InputStreamReader(searchResultStream), SearchResult.class);
-            return searchResult.didFind();
+            final String searchUrl = settings.getSearchUrl(format("(%s) && (%s)", searchQuery, getTicketNumQuery(unknownTicketNums)), unknownTicketNums.size());
+            Set<String> foundTicketNums = requestCoalescer.execute(searchUrl, new Callable<Set<String>>() {
+                @NotNull
+                @Override
+                public Set<String> call() throws IOException {
+                    final Set<String> result = new HashSet<String>();
+                    fetchHttp(SEARCH, searchUrl, new ResponseHandler<Integer>() {
+                        @NotNull
+                        @Override
+                        public Integer handle(@NotNull InputStream body) throws IOException {
+                            return readSearchResult(body, new TicketHandler() {
+                                @Override
+                                public void handle(@NotNull Ticket ticket) {
+                                    result.add(ticket.getTicketNum());
+                                }
+                            });
+                        }
+                    });
+                    return result;
+                }
+            });
+            for (String ticketNum : unknownTicketNums) {
+                ticketStore.putMatches(settings, ticketNum, searchQuery, foundTicketNums.contains(ticketNum));
+            }
+            matchingTicketNums.addAll(foundTicketNums);
+            return matchingTicketNums;
         } catch (RetrieveIssueException e) {
-            return defaultValue;
+            metrics.recordClassificationError();
+            return null;
         } catch (IOException e) {
-            return defaultValue;
+            metrics.recordClassificationError();
+            return null;
         }
     }
 
     /**
-     * Does the same as {@link AbstractIssueFetcher#fetchHttpFile(String, Credentials)} with {@code null} as second parameter.
-     * This method is mainly present to expose the functionality to other classes in this package.
+     * Fetches the tickets found by the search with the specified URL and hands them to the specified handler
+     * one by one as soon as they are decoded.
      *
-     * @param url the url of file to fetch
-     * @return result input stream, or null in case of HTTP error
+     * @param searchUrl the URL of the search
+     * @param handler   the handler to hand the found tickets to
+     * @throws IOException if the search fails
+     */
+    void searchTickets(@NotNull String searchUrl, @NotNull final TicketHandler handler) throws IOException {
+        fetchHttp(SEARCH, searchUrl, new ResponseHandler<Integer>() {
+            @NotNull
+            @Override
+            public Integer handle(@NotNull InputStream body) throws IOException {
+                return readSearchResult(body, handler);
+            }
+        });
+    }
+
+    /**
+     * Creates a thread pool with the specified amount of threads and queue, that runs tasks on the submitting thread
+     * if all threads are busy and the queue is full. Idle threads are terminated after a minute.
+     *
+     * @param threads the maximum amount of threads
+     * @param queue   the queue for tasks that wait for a thread
+     * @param name    the name of the threads
+     * @return the created thread pool
+     */
+    @NotNull
+    private static ExecutorService createBoundedExecutor(int threads, @NotNull BlockingQueue<Runnable> queue, @NotNull String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, SECONDS, queue, new DaemonThreadFactory(name),
+                                                             new CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Executes the specified task with the specified executor and the request priority of the calling thread.
      *
-     * @throws IOException if I/O error occurs
+     * @param executor the executor to execute the task with
+     * @param task     the task to execute
+     * @param <T>      the type of the result of the task
+     * @return the future result of the task
      */
     @NotNull
-    InputStream fetchHttpFile(@NotNull String url) throws IOException {
-        return super.fetchHttpFile(url, null);
+    private static <T> Future<T> submitAsync(@NotNull ExecutorService executor, @NotNull final Callable<T> task) {
+        final Priority priority = RateLimiter.getPriority();
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                Priority previousPriority = RateLimiter.setPriority(priority);
+                try {
+                    return task.call();
+                } finally {
+                    RateLimiter.setPriority(previousPriority);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetches the specified URL through the pooled keep-alive connections of this fetcher
+     * and hands the response body to the specified handler.
+     * This method is mainly present to expose the functionality to other classes in this package.
+     *
+     * @param endpoint the type of the requested endpoint
+     * @param url      the URL to fetch
+     * @param handler  the handler that decodes the response body
+     * @param <T>      the type of the decoded result
+     * @return the result of the handler
+     * @throws IOException if the request fails or the server responds with an unsuccessful status
+     */
+    <T> T fetchHttp(@NotNull Endpoint endpoint, @NotNull String url, @NotNull ResponseHandler<T> handler) throws IOException {
+        return httpTransport.get(endpoint, url, handler);
+    }
+
+    /**
+     * Carries an issue whose classification could not be completed out of a fetch function,
+     * so that it is served without being cached in the issue cache of TeamCity.
+     */
+    private static class IncompleteIssueException extends RuntimeException {
+        private final IssueData issueData;
+
+        IncompleteIssueException(@NotNull IssueData issueData) {
+            this.issueData = issueData;
+        }
+
+        @NotNull
+        IssueData getIssueData() {
+            return issueData;
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            // only used for control flow, so the stack trace is not needed
+            return this;
+        }
+    }
+
+    /**
+     * Signals from a fetch function that only looks into the issue cache of TeamCity, that the issue is not cached.
+     */
+    private static class NotCachedException extends RuntimeException {
+        static final NotCachedException INSTANCE = new NotCachedException();
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            // only used for control flow, so the stack trace is not needed
+            return this;
+        }
+    }
+
+    /**
+     * The issues of a chunk projected for one connection, together with whether their classification is complete.
+     */
+    private static class ProjectedChunk {
+        private final List<IssueData> issueData;
+        private final boolean complete;
+
+        ProjectedChunk(@NotNull List<IssueData> issueData, boolean complete) {
+            this.issueData = issueData;
+            this.complete = complete;
+        }
+
+        @NotNull
+        List<IssueData> getIssueData() {
+            return issueData;
+        }
+
+        boolean isComplete() {
+            return complete;
+        }
+    }
+
+    /**
+     * The classification of a batch of tickets as resolved and as feature request.
+     */
+    static class TicketClassification {
+        private final QueryClassification resolved;
+        private final QueryClassification featureRequest;
+        private final boolean allFeatureRequests;
+
+        TicketClassification(@NotNull QueryClassification resolved, @NotNull QueryClassification featureRequest, boolean allFeatureRequests) {
+            this.resolved = resolved;
+            this.featureRequest = featureRequest;
+            this.allFeatureRequests = allFeatureRequests;
+        }
+
+        /**
+         * Returns whether all searches needed for the classification succeeded.
+         *
+         * @return whether all searches needed for the classification succeeded
+         */
+        boolean isComplete() {
+            return resolved.isComplete() && featureRequest.isComplete();
+        }
+
+        /**
+         * Returns whether the specified ticket can be classified, or whether a query that is evaluated locally
+         * cannot decide it, so that it has to be classified with {@link SourceForgeIssueFetcher#classifyUndecidedTickets}.
+         *
+         * @param ticket the ticket to classify
+         * @return whether the ticket can be classified
+         */
+        boolean isDecided(@NotNull Ticket ticket) {
+            return resolved.isDecided(ticket) && featureRequest.isDecided(ticket);
+        }
+
+        boolean isResolved(@NotNull Ticket ticket) {
+            return resolved.matches(ticket);
+        }
+
+        boolean isFeatureRequest(@NotNull Ticket ticket) {
+            return allFeatureRequests || featureRequest.matches(ticket);
+        }
+
+        /**
+         * Remembers the results of the searches of this classification for the stored ticket with the specified number,
+         * so that other connections with the same queries do not search them again.
+         *
+         * @param ticketStore the store of the ticket
+         * @param settings    the settings of the connection the ticket was classified for
+         * @param ticketNum   the number of the ticket
+         */
+        void rememberMatches(@NotNull SharedTicketStore ticketStore, @NotNull ConnectionSettings settings, @NotNull String ticketNum) {
+            resolved.rememberMatches(ticketStore, settings, ticketNum);
+            featureRequest.rememberMatches(ticketStore, settings, ticketNum);
+        }
+    }
+
+    /**
+     * The classification of a batch of tickets by one query, either evaluated locally per ticket,
+     * or by the numbers of the tickets found by a search, or a combination of both for the tickets
+     * the local evaluation cannot decide.
+     */
+    private static class QueryClassification {
+        private final String query;
+        private final SearchQueryEvaluator evaluator;
+        private final boolean searched;
+        private final Set<String> matchingTicketNums;
+
+        /**
+         * Creates a new classification by one query.
+         *
+         * @param query              the query, or {@code null} if no ticket matches
+         * @param evaluator          the evaluator of the query, or {@code null} if the query is not evaluated locally
+         * @param searched           whether the query was searched for the tickets, either for all of them
+         *                           or for those the evaluator cannot decide
+         * @param matchingTicketNums the numbers of the tickets found by the search, or {@code null} if the search failed
+         *                           or no search was done
+         */
+        QueryClassification(@Nullable String query, @Nullable SearchQueryEvaluator evaluator, boolean searched,
+                            @Nullable Set<String> matchingTicketNums) {
+            this.query = query;
+            this.evaluator = evaluator;
+            this.searched = searched;
+            this.matchingTicketNums = matchingTicketNums;
+        }
+
+        boolean isComplete() {
+            return !searched || (matchingTicketNums != null);
+        }
+
+        boolean isDecided(@NotNull Ticket ticket) {
+            return (query == null) || searched || (evaluator == null) || evaluator.isDecidable(ticket);
+        }
+
+        boolean matches(@NotNull Ticket ticket) {
+            if (query == null) {
+                return false;
+            }
+            if ((evaluator != null) && evaluator.isDecidable(ticket)) {
+                return evaluator.matches(ticket);
+            }
+            return (matchingTicketNums != null) && matchingTicketNums.contains(ticket.getTicketNum());
+        }
+
+        /**
+         * Returns the query that has to be searched for the tickets the evaluator cannot decide.
+         *
+         * @return the query to search, or {@code null} if the query was searched already or needs no search
+         */
+        @Nullable
+        String getUndecidedQuery() {
+            return searched ? null : query;
+        }
+
+        /**
+         * Returns a copy of this classification that additionally knows the result of the search for the undecided tickets.
+         *
+         * @param matchingTicketNums the numbers of the tickets found by the search, or {@code null} if the search failed
+         * @return the classification including the search result
+         */
+        @NotNull
+        QueryClassification withSearchResult(@Nullable Set<String> matchingTicketNums) {
+            return new QueryClassification(query, evaluator, true, matchingTicketNums);
+        }
+
+        void rememberMatches(@NotNull SharedTicketStore ticketStore, @NotNull ConnectionSettings settings, @NotNull String ticketNum) {
+            // the search of an evaluated query only covers the undecided tickets, so only searches for all tickets are remembered
+            if ((evaluator == null) && (query != null) && (matchingTicketNums != null)) {
+                ticketStore.putMatches(settings, ticketNum, query, matchingTicketNums.contains(ticketNum));
+            }
+        }
     }
 }
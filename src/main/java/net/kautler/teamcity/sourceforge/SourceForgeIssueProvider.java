@@ -17,17 +17,20 @@
 package net.kautler.teamcity.sourceforge;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.google.gson.Gson;
 import jetbrains.buildServer.issueTracker.AbstractIssueProvider;
 import jetbrains.buildServer.issueTracker.IssueData;
 import jetbrains.buildServer.issueTracker.IssueFetcher;
@@ -35,17 +38,17 @@ import jetbrains.buildServer.issueTracker.errors.NotFoundException;
 import jetbrains.buildServer.issueTracker.errors.RetrieveIssueException;
 import jetbrains.buildServer.serverSide.InvalidProperty;
 import jetbrains.buildServer.serverSide.PropertiesProcessor;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import net.kautler.teamcity.sourceforge.cache.ProjectMetadata;
 import net.kautler.teamcity.sourceforge.model.DataVehicle;
-import net.kautler.teamcity.sourceforge.model.Project;
-import net.kautler.teamcity.sourceforge.model.Ticket;
-import net.kautler.teamcity.sourceforge.model.Tool;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import static java.lang.String.format;
-import static java.util.Collections.sort;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.commons.lang.StringUtils.isEmpty;
 import static org.apache.commons.lang.StringUtils.isNotEmpty;
+import static org.apache.commons.lang.StringUtils.join;
 
 /**
  * An {@code IssueProvider}, that provides SourceForge issues and validates the settings for the issue tracker that is edited.
@@ -53,7 +56,9 @@ import static org.apache.commons.lang.StringUtils.isNotEmpty;
 public class SourceForgeIssueProvider extends AbstractIssueProvider {
     private static final String MOUNT_POINT_PATTERN = "[a-zA-Z0-9-]+";
     private static final String PROJECT_PATTERN = "(?:u|p)/" + MOUNT_POINT_PATTERN;
-    private static final Gson GSON = new Gson();
+    private static final String VALIDATION_TIMEOUT_PROPERTY = "teamcity.sourceforge.validation.timeoutSeconds";
+
+    private boolean patternHasGroups;
 
     public SourceForgeIssueProvider(String type, IssueFetcher fetcher) {
         super(type, fetcher);
@@ -68,119 +73,126 @@ public class SourceForgeIssueProvider extends AbstractIssueProvider {
                 // check the standard properties, that are used in the superclass
                 List<InvalidProperty> result = new ArrayList<InvalidProperty>(SourceForgeIssueProvider.super.getPropertiesProcessor().process(properties));
 
-                SourceForgeIssueFetcher sfFetcher = (SourceForgeIssueFetcher) SourceForgeIssueProvider.this.myFetcher;
+                final SourceForgeIssueFetcher sfFetcher = (SourceForgeIssueFetcher) SourceForgeIssueProvider.this.myFetcher;
 
-                String projectName = null;
-                InputStream projectStream = null;
-                if (properties.containsKey("project")) {
-                    projectName = properties.get("project");
-                    if (projectName.length() == 0) {
-                        result.add(new InvalidProperty("project", "SF project must be specified"));
-                    } else if (!projectName.matches(PROJECT_PATTERN)) {
-                        result.add(new InvalidProperty("project", "SF project may only contain letters, digits and dashes"));
-                    } else {
-                        try {
-                            // request the project from the API to see if it exists
-                            projectStream = sfFetcher.fetchHttpFile(sfFetcher.getProjectUrl(projectName, true));
-                        } catch (NotFoundException e) {
-                            result.add(new InvalidProperty("project", "The specified SF project could not be found"));
-                        } catch (RetrieveIssueException e) {
-                            result.add(new InvalidProperty("project", format("A valid SF project must be specified [%s]", e.getMessage())));
-                        } catch (IOException e) {
-                            result.add(new InvalidProperty("project", format("A valid SF project must be specified [%s]", e.getMessage())));
-                        }
+                // start all validations that need requests at once, as they are independent of each other,
+                // their results are only evaluated if the settings they depend on are valid
+                final String projectName = properties.get("project");
+                final String ticketToolName = properties.get("ticketTool");
+                boolean validProjectName = (projectName != null) && projectName.matches(PROJECT_PATTERN);
+                final boolean validTicketToolName = (ticketToolName != null) && ticketToolName.matches(MOUNT_POINT_PATTERN);
+                ProjectMetadata cachedProject = null;
+                Future<ProjectMetadata> projectValidation = null;
+                Future<Void> resolvedQueryValidation = null;
+                Future<Void> featureRequestQueryValidation = null;
+                if (validProjectName) {
+                    // cached project metadata is used right away without handing the validation to another thread
+                    cachedProject = sfFetcher.getProjectMetadataCache().getIfPresent(projectName, validTicketToolName ? ticketToolName : null);
+                    if (cachedProject == null) {
+                        projectValidation = sfFetcher.validateAsynchronously(new Callable<ProjectMetadata>() {
+                            @NotNull
+                            @Override
+                            public ProjectMetadata call() throws IOException {
+                                // request the project from the API to see if it exists
+                                return sfFetcher.getProjectMetadataCache().get(projectName, validTicketToolName ? ticketToolName : null);
+                            }
+                        });
+                    }
+                    if (validTicketToolName) {
+                        resolvedQueryValidation = validateSearchQueryAsynchronously(sfFetcher, projectName, ticketToolName, "resolvedQuery",
+                                                                                    properties.get("resolvedQuery"));
+                        featureRequestQueryValidation = validateSearchQueryAsynchronously(sfFetcher, projectName, ticketToolName, "featureRequestQuery",
+                                                                                          properties.get("featureRequestQuery"));
                     }
                 }
+                long deadline = System.currentTimeMillis() + TeamCityProperties.getInteger(VALIDATION_TIMEOUT_PROPERTY, 30) * 1000L;
 
-                String ticketToolName = null;
-                boolean validTicketTool = false;
-                if (properties.containsKey("ticketTool")) {
-                    ticketToolName = properties.get("ticketTool");
-                    if (ticketToolName.length() == 0) {
-                        result.add(new InvalidProperty("ticketTool", "The Ticket tool mount point must be specified"));
-                    } else if (!ticketToolName.matches(MOUNT_POINT_PATTERN)) {
-                        result.add(new InvalidProperty("ticketTool", "Ticket tool mount point may only contain letters, digits and dashes"));
-                    } else {
-                        // if a valid project was specified, the stream to the API was opened,
-                        // so we can decode the project JSON to verify the specified ticket tool mount point
-                        if (projectStream != null) {
-                            // decode the project JSON
-                            Project project = GSON.fromJson(new InputStreamReader(projectStream), Project.class);
-
-                            // search through the ticket tools of the project for the specified mount point and build
-                            // a list of valid ticket tool mount points for the error message if the mount point is not valid
-                            StringBuilder validTicketToolsBuilder = new StringBuilder();
-                            List<Tool> tools = new ArrayList<Tool>(project.getTools());
-                            // sort the found tools, so that they are listed alphabetically in the error message
-                            sort(tools, new Comparator<Tool>() {
-                                @Override
-                                public int compare(Tool o1, Tool o2) {
-                                    return o1.getMountPoint().compareTo(o2.getMountPoint());
-                                }
-                            });
-                            for (Tool tool : tools) {
-                                if (tool.getName().equals("tickets")) {
-                                    if (tool.getMountPoint().equals(ticketToolName)) {
-                                        validTicketTool = true;
-                                        break;
-                                    } else {
-                                        validTicketToolsBuilder.append(tool.getMountPoint()).append(", ");
-                                    }
-                                }
-                            }
-                            if (!validTicketTool) {
-                                String validTicketTools = validTicketToolsBuilder.substring(0, validTicketToolsBuilder.length() - 2);
-                                result.add(new InvalidProperty("ticketTool", "The specified ticket tool mount point does not exist in the specified SF project, "
-                                                                             + "valid ticket tool mount points are: " + validTicketTools));
-                            }
+                try {
+                    ProjectMetadata project = null;
+                    if (properties.containsKey("project")) {
+                        if (projectName.length() == 0) {
+                            result.add(new InvalidProperty("project", "SF project must be specified"));
+                        } else if (!validProjectName) {
+                            result.add(new InvalidProperty("project", "SF project may only contain letters, digits and dashes"));
+                        } else if (cachedProject != null) {
+                            project = cachedProject;
                         } else {
-                            result.add(new InvalidProperty("ticketTool", "SF project is not valid, ticket tool cannot be verified"));
+                            try {
+                                project = awaitValidation(projectValidation, deadline);
+                            } catch (NotFoundException e) {
+                                result.add(new InvalidProperty("project", "The specified SF project could not be found"));
+                            } catch (RetrieveIssueException e) {
+                                result.add(new InvalidProperty("project", format("A valid SF project must be specified [%s]", e.getMessage())));
+                            } catch (IOException e) {
+                                result.add(new InvalidProperty("project", format("A valid SF project must be specified [%s]", e.getMessage())));
+                            }
                         }
                     }
-                }
 
-                if (properties.containsKey("resolvedQuery") && isNotEmpty(properties.get("resolvedQuery"))) {
-                    if (projectStream == null) {
-                        result.add(new InvalidProperty("resolvedQuery", "SF project and is not valid, resolved query cannot be verified"));
-                    } else if (!validTicketTool) {
-                        result.add(new InvalidProperty("resolvedQuery", "Ticket tool is not valid, resolved query cannot be verified"));
-                    } else {
-                        String resolvedQuery = properties.get("resolvedQuery");
-                        try {
-                            // trigger the specified search through the API to validate the syntactical correctness of the
-                            // specified search query. Add the condition that ticket_num equals 1 to speed up the search,
-                            // as we are only interested in syntax here, not in the actual result.
-                            sfFetcher.fetchHttpFile(sfFetcher.getSearchUrl(projectName, ticketToolName, format("(%s) && ticket_num:1", resolvedQuery)));
-                        } catch (RetrieveIssueException e) {
-                            result.add(new InvalidProperty("resolvedQuery", format("A valid SF search query must be specified [%s]", e.getMessage())));
-                        } catch (IOException e) {
-                            result.add(new InvalidProperty("resolvedQuery", format("A valid SF search query must be specified [%s]", e.getMessage())));
+                    boolean validTicketTool = false;
+                    if (properties.containsKey("ticketTool")) {
+                        if (ticketToolName.length() == 0) {
+                            result.add(new InvalidProperty("ticketTool", "The Ticket tool mount point must be specified"));
+                        } else if (!validTicketToolName) {
+                            result.add(new InvalidProperty("ticketTool", "Ticket tool mount point may only contain letters, digits and dashes"));
+                        } else {
+                            // if a valid project was specified, its metadata is known,
+                            // so we can use it to verify the specified ticket tool mount point
+                            if (project != null) {
+                                validTicketTool = project.hasTicketTool(ticketToolName);
+                                if (!validTicketTool) {
+                                    // the mount points are sorted, so that they are listed alphabetically in the error message
+                                    String validTicketTools = join(project.getTicketToolMountPoints(), ", ");
+                                    result.add(new InvalidProperty("ticketTool", "The specified ticket tool mount point does not exist in the specified SF project, "
+                                                                                 + "valid ticket tool mount points are: " + validTicketTools));
+                                }
+                            } else {
+                                result.add(new InvalidProperty("ticketTool", "SF project is not valid, ticket tool cannot be verified"));
+                            }
                         }
                     }
-                }
 
-                if (properties.containsKey("featureRequestQuery") && isNotEmpty(properties.get("featureRequestQuery"))) {
-                    String featureRequestQuery = properties.get("featureRequestQuery");
-                    // a value of "true" means that all tickets from this ticket tool are feature requests
-                    // this is useful if you have separate ticket tools for bugs and feature requests
-                    if (!featureRequestQuery.equals("true")) {
-                        if (projectStream == null) {
-                            result.add(new InvalidProperty("featureRequestQuery", "SF project and is not valid, feature request query cannot be verified"));
+                    if (properties.containsKey("resolvedQuery") && isNotEmpty(properties.get("resolvedQuery"))) {
+                        if (project == null) {
+                            result.add(new InvalidProperty("resolvedQuery", "SF project and is not valid, resolved query cannot be verified"));
                         } else if (!validTicketTool) {
-                            result.add(new InvalidProperty("featureRequestQuery", "Ticket tool is not valid, feature request query cannot be verified"));
+                            result.add(new InvalidProperty("resolvedQuery", "Ticket tool is not valid, resolved query cannot be verified"));
                         } else {
                             try {
-                                // trigger the specified search through the API to validate the syntactical correctness of the
-                                // specified search query. Add the condition that ticket_num equals 1 to speed up the search,
-                                // as we are only interested in syntax here, not in the actual result.
-                                sfFetcher.fetchHttpFile(sfFetcher.getSearchUrl(projectName, ticketToolName, format("(%s) && ticket_num:1", featureRequestQuery)));
+                                awaitValidation(resolvedQueryValidation, deadline);
                             } catch (RetrieveIssueException e) {
-                                result.add(new InvalidProperty("featureRequestQuery", format("A valid SF search query or 'true' must be specified [%s]", e.getMessage())));
+                                result.add(new InvalidProperty("resolvedQuery", format("A valid SF search query must be specified [%s]", e.getMessage())));
                             } catch (IOException e) {
-                                result.add(new InvalidProperty("featureRequestQuery", format("A valid SF search query or 'true' must be specified [%s]", e.getMessage())));
+                                result.add(new InvalidProperty("resolvedQuery", format("A valid SF search query must be specified [%s]", e.getMessage())));
                             }
                         }
                     }
+
+                    if (properties.containsKey("featureRequestQuery") && isNotEmpty(properties.get("featureRequestQuery"))) {
+                        String featureRequestQuery = properties.get("featureRequestQuery");
+                        // a value of "true" means that all tickets from this ticket tool are feature requests
+                        // this is useful if you have separate ticket tools for bugs and feature requests
+                        if (!featureRequestQuery.equals("true")) {
+                            if (project == null) {
+                                result.add(new InvalidProperty("featureRequestQuery", "SF project and is not valid, feature request query cannot be verified"));
+                            } else if (!validTicketTool) {
+                                result.add(new InvalidProperty("featureRequestQuery", "Ticket tool is not valid, feature request query cannot be verified"));
+                            } else {
+                                try {
+                                    awaitValidation(featureRequestQueryValidation, deadline);
+                                } catch (RetrieveIssueException e) {
+                                    result.add(new InvalidProperty("featureRequestQuery", format("A valid SF search query or 'true' must be specified [%s]", e.getMessage())));
+                                } catch (IOException e) {
+                                    result.add(new InvalidProperty("featureRequestQuery", format("A valid SF search query or 'true' must be specified [%s]", e.getMessage())));
+                                }
+                            }
+                        }
+                    }
+                } finally {
+                    // validations whose results are not needed are not waited for
+                    cancel(projectValidation);
+                    cancel(resolvedQueryValidation);
+                    cancel(featureRequestQueryValidation);
                 }
 
                 validateCustomValueField(properties, "type", result);
@@ -190,10 +202,78 @@ public class SourceForgeIssueProvider extends AbstractIssueProvider {
                 return result;
             }
 
+            /**
+             * Starts the validation of the specified search query in the background.
+             *
+             * @param sfFetcher      the fetcher to validate the search query with
+             * @param projectName    the name of the project to search in
+             * @param ticketToolName the ticket tool to search in
+             * @param property       the name of the property the search query is configured in
+             * @param query          the search query to validate
+             * @return the pending validation, or {@code null} if there is nothing to validate
+             */
+            @Nullable
+            private Future<Void> validateSearchQueryAsynchronously(@NotNull final SourceForgeIssueFetcher sfFetcher, @NotNull final String projectName,
+                                                                   @NotNull final String ticketToolName, @NotNull String property,
+                                                                   @Nullable final String query) {
+                if (!isSearchQuery(property, query)) {
+                    return null;
+                }
+                return sfFetcher.validateAsynchronously(new Callable<Void>() {
+                    @Nullable
+                    @Override
+                    public Void call() throws IOException {
+                        sfFetcher.validateSearchQuery(projectName, ticketToolName, query);
+                        return null;
+                    }
+                });
+            }
+
+            /**
+             * Waits for the specified validation, but not after the specified deadline.
+             *
+             * @param validation the pending validation
+             * @param deadline   the time in milliseconds since the epoch after which the validation counts as failed
+             * @param <T>        the type of the result of the validation
+             * @return the result of the validation
+             * @throws RetrieveIssueException if the validation failed or did not finish in time
+             * @throws IOException            if the validation failed or the waiting thread was interrupted
+             */
+            private <T> T awaitValidation(@NotNull Future<T> validation, long deadline) throws IOException {
+                try {
+                    return validation.get(Math.max(0, deadline - System.currentTimeMillis()), MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the validation");
+                } catch (TimeoutException e) {
+                    throw new RetrieveIssueException("SourceForge did not answer in time");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    IOException ioException = new IOException(String.valueOf(cause));
+                    ioException.initCause(cause);
+                    throw ioException;
+                }
+            }
+
+            private void cancel(@Nullable Future<?> validation) {
+                if (validation != null) {
+                    validation.cancel(true);
+                }
+            }
+
             /**
              * Validates the correctness of a custom value field.
              * <p>
-             * Allowed syntax can be seen at {@link SourceForgeIssueFetcher#getCustomValue(String, Ticket)}
+             * Allowed syntax can be seen at {@link CustomValueExtractor}
              * <p>
              * This method verifies that a given regex for the labels case is valid and does not match the empty string
              * and that for the custom case a custom field name is given.
@@ -233,6 +313,7 @@ public class SourceForgeIssueProvider extends AbstractIssueProvider {
                                  myProperties.get("type"),
                                  myProperties.get("priority"),
                                  myProperties.get("severity")).toJson();
+        patternHasGroups = (myPattern != null) && (myPattern.matcher("").groupCount() > 0);
     }
 
     @Override
@@ -249,6 +330,10 @@ public class SourceForgeIssueProvider extends AbstractIssueProvider {
     @NotNull
     @Override
     protected String extractId(@NotNull String match) {
+        // without groups the ID is the whole match, which the superclass found already
+        if (!patternHasGroups) {
+            return match;
+        }
         Matcher matcher = myPattern.matcher(match);
         if (!matcher.matches()) {
             throw new AssertionError(format("Match '%s' should match the pattern '%s', but does not", match, myPattern));
@@ -261,6 +346,70 @@ public class SourceForgeIssueProvider extends AbstractIssueProvider {
         }
     }
 
+    /**
+     * Finds the IDs of all issues mentioned in the specified text.
+     * Unlike the superclass, this captures the ID together with finding the match, so the text is only scanned once.
+     *
+     * @param text the text to scan, e.&nbsp;g. a commit message
+     * @return the found IDs in the order of their occurrence
+     */
+    @NotNull
+    List<String> findIssueIds(@NotNull CharSequence text) {
+        Pattern pattern = getIssuePattern();
+        return pattern == null ? Collections.<String>emptyList() : IssueIdScanner.scan(pattern, text);
+    }
+
+    /**
+     * Finds the IDs of all issues of the specified providers mentioned in the specified text.
+     * The patterns of all providers are combined, so that the text is only scanned once for all of them.
+     *
+     * @param providers the providers to find the issue IDs for
+     * @param text      the text to scan, e.&nbsp;g. a commit message
+     * @return the found IDs by provider, each in the order of their occurrence, without providers that have no valid pattern
+     */
+    @NotNull
+    static Map<SourceForgeIssueProvider, List<String>> findIssueIds(@NotNull Collection<SourceForgeIssueProvider> providers, @NotNull CharSequence text) {
+        List<SourceForgeIssueProvider> scannedProviders = new ArrayList<SourceForgeIssueProvider>(providers.size());
+        List<Pattern> patterns = new ArrayList<Pattern>(providers.size());
+        for (SourceForgeIssueProvider provider : providers) {
+            Pattern pattern = provider.getIssuePattern();
+            if (pattern != null) {
+                scannedProviders.add(provider);
+                patterns.add(pattern);
+            }
+        }
+
+        List<List<String>> issueIds = IssueIdScanner.forPatterns(patterns).scan(text);
+        Map<SourceForgeIssueProvider, List<String>> result = new LinkedHashMap<SourceForgeIssueProvider, List<String>>();
+        for (int i = 0, j = scannedProviders.size(); i < j; i++) {
+            result.put(scannedProviders.get(i), issueIds.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the pattern that finds issue IDs in texts.
+     *
+     * @return the issue pattern, or {@code null} if no valid pattern is configured
+     */
+    @Nullable
+    Pattern getIssuePattern() {
+        return (myPattern == null) || myPattern.equals(EMPTY_PATTERN) ? null : myPattern;
+    }
+
+    /**
+     * Returns whether the specified value of the specified property is a search query that has to be validated.
+     * Only for the feature request query a value of {@code "true"} is no search query,
+     * but means that all tickets from the ticket tool are feature requests.
+     *
+     * @param property the name of the property, e.&nbsp;g. {@code resolvedQuery}
+     * @param query    the value of the property
+     * @return whether the value is a search query
+     */
+    static boolean isSearchQuery(@NotNull String property, @Nullable String query) {
+        return isNotEmpty(query) && !(property.equals("featureRequestQuery") && query.equals("true"));
+    }
+
     /**
      * Does the same as {@link AbstractIssueProvider#safeCompile(String)}.
      * This method is just present to expose the functionality to other classes in this package.
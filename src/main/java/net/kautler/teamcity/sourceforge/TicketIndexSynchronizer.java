@@ -0,0 +1,326 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import jetbrains.buildServer.issueTracker.IssueData;
+import jetbrains.buildServer.issueTracker.errors.RetrieveIssueException;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import net.kautler.teamcity.sourceforge.SourceForgeIssueFetcher.TicketClassification;
+import net.kautler.teamcity.sourceforge.cache.TicketIndex;
+import net.kautler.teamcity.sourceforge.model.Ticket;
+import net.kautler.teamcity.sourceforge.model.TicketStreamReader.TicketHandler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static java.lang.String.format;
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.kautler.teamcity.sourceforge.RateLimiter.Priority.BACKGROUND;
+import static net.kautler.teamcity.sourceforge.SourceForgeIssueFetcher.encodeQuery;
+
+/**
+ * Keeps a local index of the issues of each connection up to date, so that issues can be served without any request.
+ * <p/>
+ * If enabled, a background job is started for each connection the first time one of its issues is looked up.
+ * The job periodically searches the tickets that were modified since the last synchronization, ordered by modification
+ * date, and updates the index with them. The start time of the last synchronization that found changed tickets, minus
+ * a safety overlap, is persisted together with the index as watermark, so that the synchronization resumes from there
+ * after a restart of the server and tickets modified while a synchronization was running are not missed.
+ * Jobs of connections whose index was not used for the configured idle timeout are stopped and their index is deleted,
+ * index files that were not written for the idle timeout are deleted when the server starts.
+ */
+class TicketIndexSynchronizer {
+    private static final String ENABLED_PROPERTY = "teamcity.sourceforge.sync.enabled";
+    private static final String INTERVAL_PROPERTY = "teamcity.sourceforge.sync.intervalSeconds";
+    private static final String IDLE_TIMEOUT_PROPERTY = "teamcity.sourceforge.sync.idleTimeoutSeconds";
+    private static final String OVERLAP_PROPERTY = "teamcity.sourceforge.sync.overlapSeconds";
+    private static final int PAGE_SIZE = 100;
+    private static final String INITIAL_WATERMARK = "*";
+    private static final String INDEX_FILE_SUFFIX = ".bin";
+
+    private final SourceForgeIssueFetcher fetcher;
+    private final File indexDirectory;
+    private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("SourceForge ticket synchronizer"));
+    private final ConcurrentMap<String, TicketIndex> indices = new ConcurrentHashMap<String, TicketIndex>();
+    private final ConcurrentMap<String, ScheduledFuture<?>> synchronizations = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+
+    TicketIndexSynchronizer(@NotNull SourceForgeIssueFetcher fetcher, @NotNull File indexDirectory) {
+        this.fetcher = fetcher;
+        this.indexDirectory = indexDirectory;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deleteStaleIndices();
+            }
+        });
+    }
+
+    /**
+     * Returns the indexed issues for the specified IDs, if synchronization is enabled and the initial synchronization
+     * of the connection is finished. If no synchronization job is running for the connection yet, it is started.
+     *
+     * @param settings the settings of the connection the issues belong to
+     * @param ids      the IDs of the issues to look up
+     * @return the indexed issues by their ID
+     */
+    @NotNull
+    Map<String, IssueData> getIndexedIssueData(@NotNull ConnectionSettings settings, @NotNull Collection<String> ids) {
+        if (!TeamCityProperties.getBoolean(ENABLED_PROPERTY)) {
+            return emptyMap();
+        }
+        TicketIndex index = getIndex(settings);
+        if (!index.isComplete()) {
+            return emptyMap();
+        }
+        Map<String, IssueData> result = new HashMap<String, IssueData>();
+        for (String id : ids) {
+            IssueData issueData = index.get(id);
+            if (issueData != null) {
+                result.put(id, issueData);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stops all synchronization jobs.
+     */
+    void dispose() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the index of the specified connection, starting its synchronization job if it is not running yet.
+     *
+     * @param settings the settings of the connection
+     * @return the index of the connection
+     */
+    @NotNull
+    private TicketIndex getIndex(@NotNull ConnectionSettings settings) {
+        String key = settings.getDataVehicleJson();
+        TicketIndex index = indices.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        TicketIndex newIndex = new TicketIndex(new File(indexDirectory, getIndexFileName(settings)));
+        index = indices.putIfAbsent(key, newIndex);
+        if (index != null) {
+            return index;
+        }
+        long interval = Math.max(1, TeamCityProperties.getInteger(INTERVAL_PROPERTY, 300));
+        synchronizations.put(key, executor.scheduleWithFixedDelay(new SynchronizationJob(settings, newIndex), 0, interval, SECONDS));
+        return newIndex;
+    }
+
+    @NotNull
+    private static String getIndexFileName(@NotNull ConnectionSettings settings) {
+        return format("%s_%s_%s%s", toFileNamePart(settings.getProject()), toFileNamePart(settings.getTicketTool()),
+                      settings.getConnectionId(), INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Deletes the index files that were not written for the idle timeout. Those belong to connections that no longer
+     * exist or were not used for that long, so that their synchronization would be stopped anyway.
+     * As a running synchronization touches its index file on each run, the indices of used connections are kept.
+     */
+    private void deleteStaleIndices() {
+        File[] files = indexDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long idleTimeout = TeamCityProperties.getInteger(IDLE_TIMEOUT_PROPERTY, 86400) * 1000L;
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(INDEX_FILE_SUFFIX)
+                && (System.currentTimeMillis() - file.lastModified() > idleTimeout)) {
+                file.delete();
+            }
+        }
+    }
+
+    @NotNull
+    private static String toFileNamePart(@NotNull String value) {
+        return value.replaceAll("[^a-zA-Z0-9-]", "_");
+    }
+
+    /**
+     * Converts the modification date of a ticket as returned by the API into a date usable in a search query.
+     *
+     * @param modDate the modification date as returned by the API, e.&nbsp;g. '2015-06-01 19:50:08.123000'
+     * @return the modification date as used in search queries, e.&nbsp;g. '2015-06-01T19:50:08Z',
+     * or {@code null} if the given date has an unexpected format
+     */
+    @Nullable
+    static String toWatermark(@Nullable String modDate) {
+        if ((modDate == null) || (modDate.length() < 19)) {
+            return null;
+        }
+        return modDate.substring(0, 10) + 'T' + modDate.substring(11, 19) + 'Z';
+    }
+
+    /**
+     * Converts the specified time into a date usable in a search query.
+     *
+     * @param time the time in milliseconds since the epoch
+     * @return the time as used in search queries, e.&nbsp;g. '2015-06-01T19:50:08Z'
+     */
+    @NotNull
+    static String toWatermark(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(time));
+    }
+
+    /**
+     * A background job that synchronizes the index of one connection.
+     */
+    private class SynchronizationJob implements Runnable {
+        private final ConnectionSettings settings;
+        private final TicketIndex index;
+        private boolean loaded;
+
+        SynchronizationJob(@NotNull ConnectionSettings settings, @NotNull TicketIndex index) {
+            this.settings = settings;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            long idleTimeout = TeamCityProperties.getInteger(IDLE_TIMEOUT_PROPERTY, 86400) * 1000L;
+            if (!TeamCityProperties.getBoolean(ENABLED_PROPERTY) || (System.currentTimeMillis() - index.getLastAccessTime() > idleTimeout)) {
+                stop();
+                index.delete();
+                return;
+            }
+
+            // the threads of the synchronizer only do background requests
+            RateLimiter.setPriority(BACKGROUND);
+            try {
+                if (!loaded) {
+                    index.load();
+                    loaded = true;
+                }
+                synchronize();
+            } catch (RetrieveIssueException e) {
+                // the watermark is not advanced, so the next run tries again
+            } catch (IOException e) {
+                // the watermark is not advanced, so the next run tries again
+            } catch (RuntimeException e) {
+                // the watermark is not advanced, so the next run tries again,
+                // an escaping exception would silently cancel this job and freeze the index
+            }
+        }
+
+        /**
+         * Fetches all tickets modified since the watermark page by page, updates the index with them
+         * and advances and persists the watermark when all pages are processed.
+         * <p/>
+         * Each page is searched from the modification date of the last ticket of the previous page instead of
+         * by page number, so that tickets that are modified while paging and thus move to the end of the result
+         * do not shift the following pages and make them skip tickets. Only if a whole page has the same
+         * modification date, the next page of the same search is fetched.
+         * <p/>
+         * The new watermark is the start time of this synchronization minus a safety overlap, so that tickets
+         * modified while paging and modification dates that are slightly off against the clock of this server
+         * are synchronized again by the next run. If no ticket was modified since the watermark, neither
+         * the watermark nor the index changed, so the index is not written but only touched.
+         *
+         * @throws IOException if fetching or classifying the tickets fails
+         */
+        private void synchronize() throws IOException {
+            long startTime = System.currentTimeMillis();
+            String watermark = index.getWatermark();
+            String cursor = watermark == null ? INITIAL_WATERMARK : watermark;
+            boolean changed = false;
+            for (int page = 0; ; ) {
+                String query = format("mod_date_dt:[%s TO *]", cursor);
+                String searchUrl = format("%s&page=%d&sort=%s", settings.getSearchUrl(query, PAGE_SIZE), page, encodeQuery("mod_date_dt asc"));
+                // a page is bounded by the page size, so it is collected to classify it as one batch
+                final List<Ticket> tickets = new ArrayList<Ticket>(PAGE_SIZE);
+                final List<String> ticketNums = new ArrayList<String>(PAGE_SIZE);
+                fetcher.searchTickets(searchUrl, new TicketHandler() {
+                    @Override
+                    public void handle(@NotNull Ticket ticket) {
+                        tickets.add(ticket);
+                        ticketNums.add(ticket.getTicketNum());
+                    }
+                });
+                if (tickets.isEmpty()) {
+                    break;
+                }
+
+                // the tickets changed, so they replace the stored ones together with their known query matches
+                fetcher.storeTickets(settings, tickets);
+                TicketClassification classification = fetcher.classifyUndecidedTickets(settings, fetcher.classifyTickets(settings, ticketNums), tickets);
+                if (!classification.isComplete()) {
+                    throw new IOException("Tickets could not be classified");
+                }
+                for (Ticket ticket : tickets) {
+                    index.put(fetcher.getIssueData(ticket, settings, classification));
+                }
+                changed = true;
+
+                if (tickets.size() < PAGE_SIZE) {
+                    break;
+                }
+                String lastModDate = toWatermark(tickets.get(tickets.size() - 1).getModDate());
+                if ((lastModDate != null) && (lastModDate.compareTo(cursor) > 0)) {
+                    cursor = lastModDate;
+                    page = 0;
+                } else {
+                    page++;
+                }
+            }
+
+            if (!changed && (watermark != null)) {
+                index.touch();
+                return;
+            }
+            String newWatermark = toWatermark(startTime - Math.max(0, TeamCityProperties.getInteger(OVERLAP_PROPERTY, 300)) * 1000L);
+            if ((watermark == null) || (newWatermark.compareTo(watermark) > 0)) {
+                index.setWatermark(newWatermark);
+            }
+            index.save();
+        }
+
+        private void stop() {
+            String key = settings.getDataVehicleJson();
+            indices.remove(key, index);
+            ScheduledFuture<?> synchronization = synchronizations.remove(key);
+            if (synchronization != null) {
+                synchronization.cancel(false);
+            }
+        }
+    }
+}
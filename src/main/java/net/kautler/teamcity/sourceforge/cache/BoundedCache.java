@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache that is bounded in size and in the age of its entries.
+ * <p/>
+ * If the cache is full, the least recently used entry is evicted. Entries that are older than the configured
+ * time to live are treated as absent and evicted when they are encountered.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class BoundedCache<K, V> implements CacheStatistics {
+    private final int maxSize;
+    private final long timeToLive;
+    private final Map<K, CacheEntry<V>> entries;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize    the maximum amount of entries
+     * @param timeToLive the maximum age of entries in milliseconds, or a non-positive value for entries that do not expire
+     */
+    public BoundedCache(final int maxSize, long timeToLive) {
+        this.maxSize = Math.max(1, maxSize);
+        this.timeToLive = timeToLive;
+        entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > BoundedCache.this.maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the value that is cached for the given key.
+     *
+     * @param key the key to look up
+     * @return the cached value or {@code null} if no value is cached or the cached value expired
+     */
+    public V get(K key) {
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.get(key);
+            if (entry == null) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            if (isExpired(entry)) {
+                entries.remove(key);
+                evictionCount.incrementAndGet();
+                missCount.incrementAndGet();
+                return null;
+            }
+            hitCount.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Caches the given value for the given key, replacing any value that is cached for the key already.
+     *
+     * @param key   the key to cache the value for
+     * @param value the value to cache
+     */
+    public void put(K key, V value) {
+        synchronized (entries) {
+            entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Caches the given value for the given key if no valid value is cached for the key yet.
+     *
+     * @param key   the key to cache the value for
+     * @param value the value to cache
+     * @return the value that is cached for the key after this call
+     */
+    public V putIfAbsent(K key, V value) {
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.get(key);
+            if ((entry != null) && !isExpired(entry)) {
+                return entry.value;
+            }
+            entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis()));
+            return value;
+        }
+    }
+
+    /**
+     * Removes the value that is cached for the given key.
+     *
+     * @param key the key to remove the value for
+     */
+    public void remove(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Evicts all entries that are expired.
+     */
+    public void evictExpired() {
+        synchronized (entries) {
+            for (Iterator<CacheEntry<V>> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+                if (isExpired(iterator.next())) {
+                    iterator.remove();
+                    evictionCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private boolean isExpired(CacheEntry<V> entry) {
+        return (timeToLive > 0) && (System.currentTimeMillis() - entry.creationTime > timeToLive);
+    }
+
+    /**
+     * A cached value together with the time it was cached.
+     *
+     * @param <V> the type of the value
+     */
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long creationTime;
+
+        CacheEntry(V value, long creationTime) {
+            this.value = value;
+            this.creationTime = creationTime;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.cache;
+
+/**
+ * Statistics about the usage of a cache.
+ */
+public interface CacheStatistics {
+    /**
+     * Returns the amount of lookups that found a valid entry.
+     *
+     * @return the amount of cache hits
+     */
+    long getHitCount();
+
+    /**
+     * Returns the amount of lookups that did not find a valid entry.
+     *
+     * @return the amount of cache misses
+     */
+    long getMissCount();
+
+    /**
+     * Returns the amount of entries that were removed because the cache was full or because they expired.
+     *
+     * @return the amount of evicted entries
+     */
+    long getEvictionCount();
+
+    /**
+     * Returns the current amount of entries, including expired entries that were not evicted yet.
+     *
+     * @return the current amount of entries
+     */
+    int getSize();
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.cache;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Interns strings that occur in many tickets, like statuses, labels and custom field values,
+ * so that all tickets and issues share one instance per distinct value.
+ * <p/>
+ * Unlike {@link String#intern()}, the strings are not put into the permanent generation. The pool is a fixed number
+ * of slots addressed by the hash of the value, where a new value replaces the value in its slot. So the pool is bounded,
+ * values that are not seen anymore are evicted over time, and frequent values stay interned on long-running servers.
+ * The slots are read and written without locking, as strings are immutable and losing a race only costs one duplicate.
+ */
+public final class Interner {
+    private static final int SIZE = 16384;
+    private static final String[] pool = new String[SIZE];
+
+    private Interner() {
+    }
+
+    /**
+     * Returns the shared instance of the specified value.
+     *
+     * @param value the value to intern
+     * @return the shared instance that equals the value, or the value itself if it takes over its slot
+     */
+    @Nullable
+    public static String intern(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+        String pooledValue = pool[slot];
+        if (value.equals(pooledValue)) {
+            return pooledValue;
+        }
+        pool[slot] = value;
+        return value;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.cache;
+
+import jetbrains.buildServer.issueTracker.IssueData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An issue that was fetched before, together with the time it was fetched
+ * and the validators the server sent with it, if any.
+ */
+public class KnownIssue {
+    private final IssueData issueData;
+    private final long fetchTime;
+    private final String entityTag;
+    private final String lastModified;
+
+    public KnownIssue(@NotNull IssueData issueData, long fetchTime) {
+        this(issueData, fetchTime, null, null);
+    }
+
+    public KnownIssue(@NotNull IssueData issueData, long fetchTime, @Nullable String entityTag, @Nullable String lastModified) {
+        this.issueData = issueData;
+        this.fetchTime = fetchTime;
+        this.entityTag = entityTag;
+        this.lastModified = lastModified;
+    }
+
+    @NotNull
+    public IssueData getIssueData() {
+        return issueData;
+    }
+
+    /**
+     * Returns the age of the issue.
+     *
+     * @return the time in milliseconds since the issue was fetched
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - fetchTime;
+    }
+
+    /**
+     * Returns the value of the {@code ETag} header the issue was fetched with.
+     *
+     * @return the entity tag of the issue, or {@code null} if the server did not send one
+     */
+    @Nullable
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * Returns the value of the {@code Last-Modified} header the issue was fetched with.
+     *
+     * @return the last modification date of the issue, or {@code null} if the server did not send one
+     */
+    @Nullable
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns whether the issue can be revalidated with a conditional request.
+     *
+     * @return whether the server sent an entity tag or a last modification date with the issue
+     */
+    public boolean hasValidators() {
+        return (entityTag != null) || (lastModified != null);
+    }
+
+    /**
+     * Returns a copy of this issue with the same validators that counts as fetched at the specified time.
+     * This is used when the server confirmed that the issue did not change.
+     *
+     * @param fetchTime the time in milliseconds since the epoch when the issue was revalidated
+     * @return the revalidated issue
+     */
+    @NotNull
+    public KnownIssue revalidated(long fetchTime) {
+        return new KnownIssue(issueData, fetchTime, entityTag, lastModified);
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import jetbrains.buildServer.issueTracker.IssueData;
+import jetbrains.buildServer.serverSide.ServerPaths;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * An optional persistent tier for fetched issues, that survives restarts of the TeamCity server.
+ * <p/>
+ * The issues are stored in an append-only file in the plugin data directory, keyed by the connection specific key of the issue
+ * and together with the time they were fetched. Stored issues are queued and appended in batches by a background thread,
+ * so that fetching issues does not wait for the disk. When the cache is loaded or the file grew beyond the configured
+ * compaction threshold, only the newest entry per key is kept, entries older than the configured maximum age are dropped
+ * and the file is compacted accordingly.
+ */
+public class PersistentIssueCache {
+    /**
+     * The name of the internal property that enables the persistent cache.
+     */
+    public static final String ENABLED_PROPERTY = "teamcity.sourceforge.persistentCache.enabled";
+    /**
+     * The name of the internal property that configures the maximum age in seconds of entries that are loaded.
+     */
+    public static final String MAX_AGE_PROPERTY = "teamcity.sourceforge.persistentCache.maxAgeSeconds";
+    /**
+     * The name of the internal property that configures the file size in kilobytes from which on the cache file is compacted.
+     */
+    public static final String COMPACTION_THRESHOLD_PROPERTY = "teamcity.sourceforge.persistentCache.compactionThresholdKilobytes";
+    private static final String FILE_NAME = "issue-cache-2.bin";
+    private static final String LEGACY_FILE_NAME = "issue-cache.bin";
+    private static final int MAX_PENDING_ENTRIES = 10000;
+    private static final int MAX_ENTRY_SIZE = 1024 * 1024;
+
+    private final File cacheFile;
+    private final boolean enabled;
+    private final BlockingQueue<Entry> pendingEntries = new LinkedBlockingQueue<Entry>(MAX_PENDING_ENTRIES);
+    private final ScheduledExecutorService writer;
+    private DataOutputStream output;
+    private long compactedLength;
+
+    public PersistentIssueCache(@NotNull ServerPaths serverPaths) {
+        File cacheDirectory = new File(serverPaths.getPluginDataDirectory(), "sourceforge");
+        cacheFile = new File(cacheDirectory, FILE_NAME);
+        enabled = TeamCityProperties.getBoolean(ENABLED_PROPERTY);
+        // the entries of the legacy file are not specific to a connection and thus cannot be used anymore
+        File legacyCacheFile = new File(cacheDirectory, LEGACY_FILE_NAME);
+        if (legacyCacheFile.isFile() && !legacyCacheFile.delete()) {
+            legacyCacheFile.deleteOnExit();
+        }
+        if (enabled) {
+            writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NotNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SourceForge persistent cache writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            writer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    writePendingEntries();
+                }
+            }, 1, 1, SECONDS);
+        } else {
+            writer = null;
+        }
+    }
+
+    /**
+     * Returns whether the persistent cache is enabled.
+     * If it is not enabled, nothing is stored or loaded.
+     *
+     * @return whether the persistent cache is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Loads all entries that are not older than the configured maximum age and compacts the cache file.
+     *
+     * @return the loaded entries
+     */
+    @NotNull
+    public synchronized Collection<Entry> load() {
+        if (!enabled || !cacheFile.isFile()) {
+            return new ArrayList<Entry>();
+        }
+
+        closeOutput();
+        List<Entry> result = readEntries();
+        compact(result);
+        return result;
+    }
+
+    /**
+     * Queues the specified issue to be appended to the cache file by the background writer.
+     * If the writer cannot keep up, the issue is just not persisted.
+     *
+     * @param issueKey  the connection specific key of the issue
+     * @param issueData the issue to store
+     */
+    public void store(@NotNull String issueKey, @NotNull IssueData issueData) {
+        if (!enabled) {
+            return;
+        }
+        pendingEntries.offer(new Entry(issueKey, System.currentTimeMillis(), issueData));
+    }
+
+    /**
+     * Writes the queued entries and closes the cache file.
+     * This method is called by the Spring container when the server is shut down.
+     */
+    public synchronized void dispose() {
+        if (writer != null) {
+            writer.shutdownNow();
+        }
+        writePendingEntries();
+        closeOutput();
+    }
+
+    /**
+     * Appends all queued entries to the cache file with one flush
+     * and compacts the file if it grew beyond the compaction threshold.
+     */
+    private synchronized void writePendingEntries() {
+        List<Entry> entries = new ArrayList<Entry>();
+        pendingEntries.drainTo(entries);
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            if (output == null) {
+                output = openOutput(true);
+            }
+            for (Entry entry : entries) {
+                writeEntry(output, entry);
+            }
+            output.flush();
+        } catch (IOException e) {
+            // the issues are just not persisted, the next write tries again with a fresh stream
+            closeOutput();
+            return;
+        } catch (RuntimeException e) {
+            // an issue that cannot be serialized must not stop the writer
+            closeOutput();
+            return;
+        }
+
+        // a compacted file that is still large is only compacted again when it doubled its size
+        long threshold = Math.max(TeamCityProperties.getInteger(COMPACTION_THRESHOLD_PROPERTY, 4096) * 1024L, 2 * compactedLength);
+        if (cacheFile.length() > threshold) {
+            closeOutput();
+            compact(readEntries());
+        }
+    }
+
+    /**
+     * Reads the newest entry per key that is not older than the configured maximum age from the cache file.
+     *
+     * @return the read entries
+     */
+    @NotNull
+    private List<Entry> readEntries() {
+        long minTimestamp = System.currentTimeMillis() - TeamCityProperties.getInteger(MAX_AGE_PROPERTY, 86400) * 1000L;
+        // later entries for the same key replace earlier ones
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            try {
+                while (true) {
+                    Entry entry = readEntry(input);
+                    if (entry == null) {
+                        break;
+                    }
+                    entries.remove(entry.getIssueKey());
+                    if (entry.getTimestamp() >= minTimestamp) {
+                        entries.put(entry.getIssueKey(), entry);
+                    }
+                }
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            // use what could be read so far, the compaction rewrites the file without the corrupt part
+        }
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    /**
+     * Rewrites the cache file with only the specified entries.
+     *
+     * @param entries the entries to keep
+     */
+    private void compact(@NotNull Collection<Entry> entries) {
+        try {
+            DataOutputStream compacted = openOutput(false);
+            try {
+                for (Entry entry : entries) {
+                    writeEntry(compacted, entry);
+                }
+            } finally {
+                compacted.close();
+            }
+            compactedLength = cacheFile.length();
+        } catch (IOException e) {
+            // the file is just not compacted, loading it again yields the same entries
+        }
+    }
+
+    @NotNull
+    private DataOutputStream openOutput(boolean append) throws IOException {
+        File directory = cacheFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile, append)));
+    }
+
+    private void closeOutput() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                // nothing more can be done about it
+            }
+            output = null;
+        }
+    }
+
+    private static void writeEntry(@NotNull DataOutputStream output, @NotNull Entry entry) throws IOException {
+        ByteArrayOutputStream serializedIssueData = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutput = new ObjectOutputStream(serializedIssueData);
+        objectOutput.writeObject(entry.getIssueData());
+        objectOutput.close();
+
+        output.writeUTF(entry.getIssueKey());
+        output.writeLong(entry.getTimestamp());
+        output.writeInt(serializedIssueData.size());
+        serializedIssueData.writeTo(output);
+    }
+
+    /**
+     * Reads the next entry from the specified stream.
+     *
+     * @param input the stream to read from
+     * @return the read entry, or {@code null} if the end of the stream or an implausible entry size is reached
+     * @throws IOException if the stream is corrupt or truncated
+     */
+    @Nullable
+    private static Entry readEntry(@NotNull DataInputStream input) throws IOException {
+        String issueKey;
+        try {
+            issueKey = input.readUTF();
+        } catch (EOFException e) {
+            return null;
+        }
+        long timestamp = input.readLong();
+        int size = input.readInt();
+        if ((size < 0) || (size > MAX_ENTRY_SIZE)) {
+            // a corrupt size, everything after it is unusable
+            return null;
+        }
+        byte[] serializedIssueData = new byte[size];
+        input.readFully(serializedIssueData);
+
+        ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(serializedIssueData));
+        try {
+            return new Entry(issueKey, timestamp, (IssueData) objectInput.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            objectInput.close();
+        }
+    }
+
+    /**
+     * An issue stored in the persistent cache.
+     */
+    public static class Entry {
+        private final String issueKey;
+        private final long timestamp;
+        private final IssueData issueData;
+
+        Entry(@NotNull String issueKey, long timestamp, @NotNull IssueData issueData) {
+            this.issueKey = issueKey;
+            this.timestamp = timestamp;
+            this.issueData = issueData;
+        }
+
+        /**
+         * Returns the connection specific key of the issue, under which it is cached in memory.
+         *
+         * @return the connection specific key of the issue
+         */
+        @NotNull
+        public String getIssueKey() {
+            return issueKey;
+        }
+
+        /**
+         * Returns the time when the issue was fetched.
+         *
+         * @return the time in milliseconds since the epoch when the issue was fetched
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @NotNull
+        public IssueData getIssueData() {
+            return issueData;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.kautler.teamcity.sourceforge.model.Project;
+import net.kautler.teamcity.sourceforge.model.Tool;
+import org.jetbrains.annotations.NotNull;
+
+import static java.util.Collections.sort;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * The metadata of a SourceForge project that is needed to validate and use connections,
+ * with the mount points of the ticket tools indexed for constant time lookups.
+ */
+public class ProjectMetadata {
+    private final Set<String> ticketToolMountPoints;
+    private final List<String> sortedTicketToolMountPoints;
+    private final long fetchTime;
+
+    public ProjectMetadata(@NotNull Project project, long fetchTime) {
+        this.fetchTime = fetchTime;
+        List<String> mountPoints = new ArrayList<String>();
+        Collection<Tool> tools = project.getTools();
+        if (tools != null) {
+            for (Tool tool : tools) {
+                if ("tickets".equals(tool.getName()) && (tool.getMountPoint() != null)) {
+                    mountPoints.add(tool.getMountPoint());
+                }
+            }
+        }
+        sort(mountPoints);
+        ticketToolMountPoints = new HashSet<String>(mountPoints);
+        sortedTicketToolMountPoints = unmodifiableList(mountPoints);
+    }
+
+    /**
+     * Returns whether the project has a ticket tool with the specified mount point.
+     *
+     * @param mountPoint the mount point to check
+     * @return whether the project has a ticket tool with the specified mount point
+     */
+    public boolean hasTicketTool(@NotNull String mountPoint) {
+        return ticketToolMountPoints.contains(mountPoint);
+    }
+
+    /**
+     * Returns the mount points of all ticket tools of the project.
+     *
+     * @return the mount points of all ticket tools of the project in alphabetical order
+     */
+    @NotNull
+    public List<String> getTicketToolMountPoints() {
+        return sortedTicketToolMountPoints;
+    }
+
+    /**
+     * Returns the age of the metadata.
+     *
+     * @return the time in milliseconds since the metadata was fetched
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - fetchTime;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jetbrains.buildServer.issueTracker.IssueData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A local index of all issues of one connection, that is kept up to date by synchronizing the changed tickets.
+ * <p/>
+ * Besides the issues, the index holds the watermark up to which tickets are synchronized.
+ * Both are persisted in a file, so that the synchronization resumes from the watermark after a restart of the server.
+ */
+public class TicketIndex {
+    private final File file;
+    private final ConcurrentMap<String, IssueData> issues = new ConcurrentHashMap<String, IssueData>();
+    private volatile String watermark;
+    private volatile long lastAccessTime = System.currentTimeMillis();
+
+    /**
+     * Creates a new empty index.
+     *
+     * @param file the file the index is persisted in
+     */
+    public TicketIndex(@NotNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the persisted index, if there is one.
+     * If the file cannot be read, the index stays empty and is synchronized from scratch.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                String loadedWatermark = input.readUTF();
+                Map<String, IssueData> loadedIssues = (Map<String, IssueData>) input.readObject();
+                issues.putAll(loadedIssues);
+                watermark = loadedWatermark;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            issues.clear();
+        } catch (ClassNotFoundException e) {
+            issues.clear();
+        }
+    }
+
+    /**
+     * Persists the index, replacing the previously persisted state atomically.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    public synchronized void save() throws IOException {
+        if (watermark == null) {
+            return;
+        }
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        File temporaryFile = new File(directory, file.getName() + ".tmp");
+        ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+        try {
+            output.writeUTF(watermark);
+            output.writeObject(new HashMap<String, IssueData>(issues));
+        } finally {
+            output.close();
+        }
+        if (!temporaryFile.renameTo(file) && !(file.delete() && temporaryFile.renameTo(file))) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Marks the persisted index as still used without writing it, if it was persisted already.
+     */
+    public synchronized void touch() {
+        if (file.isFile()) {
+            file.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Deletes the persisted index, e.&nbsp;g. because its connection is no longer used.
+     */
+    public synchronized void delete() {
+        file.delete();
+    }
+
+    /**
+     * Returns the indexed issue with the specified ticket number.
+     *
+     * @param ticketNum the ticket number to look up
+     * @return the indexed issue, or {@code null} if the ticket is not indexed
+     */
+    @Nullable
+    public IssueData get(@NotNull String ticketNum) {
+        lastAccessTime = System.currentTimeMillis();
+        return issues.get(ticketNum);
+    }
+
+    /**
+     * Adds the specified issue to the index, replacing an older version of it.
+     *
+     * @param issueData the issue to add
+     */
+    public void put(@NotNull IssueData issueData) {
+        issues.put(issueData.getId(), issueData);
+    }
+
+    /**
+     * Returns the watermark up to which tickets are synchronized.
+     *
+     * @return the watermark, or {@code null} if the initial synchronization is not finished yet
+     */
+    @Nullable
+    public String getWatermark() {
+        return watermark;
+    }
+
+    public void setWatermark(@NotNull String watermark) {
+        this.watermark = watermark;
+    }
+
+    /**
+     * Returns whether the initial synchronization is finished, so that the index contains all tickets.
+     *
+     * @return whether the initial synchronization is finished
+     */
+    public boolean isComplete() {
+        return watermark != null;
+    }
+
+    /**
+     * Returns the time the index was last used to look up an issue.
+     *
+     * @return the time in milliseconds since the epoch the index was last used
+     */
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.metrics;
+
+/**
+ * The types of SourceForge API endpoints the plugin requests.
+ */
+public enum Endpoint {
+    /**
+     * A single ticket.
+     */
+    TICKET,
+
+    /**
+     * A search for tickets, used for batch fetches, classifications, synchronizations and validations.
+     */
+    SEARCH,
+
+    /**
+     * A project with its tools.
+     */
+    PROJECT
+}
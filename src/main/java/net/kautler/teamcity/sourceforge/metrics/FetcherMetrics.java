@@ -0,0 +1,267 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.kautler.teamcity.sourceforge.cache.CacheStatistics;
+import org.jetbrains.annotations.NotNull;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * The metrics of the SourceForge issue fetching.
+ * <p/>
+ * The metrics are exposed over JMX as {@value #OBJECT_NAME} and on the SourceForge diagnostics page of the administration area.
+ */
+public class FetcherMetrics implements FetcherMetricsMXBean {
+    private static final String OBJECT_NAME = "net.kautler.teamcity.sourceforge:type=FetcherMetrics";
+    private static final int MAX_CONNECTIONS = 200;
+    private static final long[] LATENCY_BOUNDS = { 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000 };
+
+    private final Map<Endpoint, Histogram> requestLatencies = new EnumMap<Endpoint, Histogram>(Endpoint.class);
+    private final Map<Endpoint, AtomicLong> requestErrors = new EnumMap<Endpoint, AtomicLong>(Endpoint.class);
+    private final Histogram batchSizes = new Histogram(1, 2, 5, 10, 20, 50, 100);
+    private final Histogram decodeTimes = new Histogram(LATENCY_BOUNDS);
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final AtomicLong issueLookups = new AtomicLong();
+    private final AtomicLong issueFetches = new AtomicLong();
+    private final AtomicLong batchErrors = new AtomicLong();
+    private final AtomicLong classificationErrors = new AtomicLong();
+    private final ConcurrentMap<String, CacheStatistics> caches = new ConcurrentHashMap<String, CacheStatistics>();
+    private final ConcurrentMap<String, ConnectionStatistics> connections = new ConcurrentHashMap<String, ConnectionStatistics>();
+
+    public FetcherMetrics() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            requestLatencies.put(endpoint, new Histogram(LATENCY_BOUNDS));
+            requestErrors.put(endpoint, new AtomicLong());
+        }
+    }
+
+    /**
+     * Registers these metrics at the platform MBean server, replacing metrics registered before,
+     * e.&nbsp;g. by a previous instance of the plugin.
+     */
+    public void register() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(this, objectName);
+        } catch (JMException e) {
+            // the metrics are still shown on the diagnostics page
+        }
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server.
+     */
+    public void unregister() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            // nothing to clean up then
+        }
+    }
+
+    /**
+     * Adds the statistics of the specified cache to the counters.
+     *
+     * @param name       the name of the cache in the counters
+     * @param statistics the statistics of the cache
+     */
+    public void registerCache(@NotNull String name, @NotNull CacheStatistics statistics) {
+        caches.put(name, statistics);
+    }
+
+    /**
+     * Records a request to the API.
+     *
+     * @param endpoint   the type of the requested endpoint
+     * @param connection the project and ticket tool the request belongs to
+     * @param nanos      the time in nanoseconds until the response was received
+     * @param success    whether the request succeeded
+     */
+    public void recordRequest(@NotNull Endpoint endpoint, @NotNull String connection, long nanos, boolean success) {
+        requestLatencies.get(endpoint).record(NANOSECONDS.toMillis(nanos));
+        if (!success) {
+            requestErrors.get(endpoint).incrementAndGet();
+        }
+        ConnectionStatistics statistics = connections.get(connection);
+        if (statistics == null) {
+            // the amount of tracked connections is limited, as requests for arbitrary projects can be triggered by validations
+            if (connections.size() >= MAX_CONNECTIONS) {
+                return;
+            }
+            ConnectionStatistics newStatistics = new ConnectionStatistics();
+            statistics = connections.putIfAbsent(connection, newStatistics);
+            if (statistics == null) {
+                statistics = newStatistics;
+            }
+        }
+        statistics.record(NANOSECONDS.toMillis(nanos), success);
+    }
+
+    /**
+     * Records the decoding of a response.
+     *
+     * @param bytes the amount of bytes that were downloaded for the response
+     * @param nanos the time in nanoseconds the decoding took, including streaming the response
+     */
+    public void recordDecoding(long bytes, long nanos) {
+        downloadedBytes.addAndGet(bytes);
+        decodeTimes.record(NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * Records lookups of issues, either of a single issue or of the issues of a batch.
+     *
+     * @param count the amount of looked up issues
+     */
+    public void recordIssueLookups(int count) {
+        issueLookups.addAndGet(count);
+    }
+
+    /**
+     * Records lookups of issues that were not in the issue cache and had to be fetched.
+     *
+     * @param count the amount of issues that had to be fetched
+     */
+    public void recordIssueFetches(int count) {
+        issueFetches.addAndGet(count);
+    }
+
+    /**
+     * Records the amount of issues that were requested with one batch.
+     *
+     * @param size the amount of requested issues
+     */
+    public void recordBatchSize(int size) {
+        batchSizes.record(size);
+    }
+
+    /**
+     * Records a part of a batch that failed and whose issues are missing in the result.
+     */
+    public void recordBatchError() {
+        batchErrors.incrementAndGet();
+    }
+
+    /**
+     * Records a classification search that failed and therefore matched no ticket.
+     */
+    public void recordClassificationError() {
+        classificationErrors.incrementAndGet();
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new TreeMap<String, Long>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            String prefix = "request." + endpoint.name().toLowerCase(Locale.ENGLISH);
+            requestLatencies.get(endpoint).addTo(counters, prefix + ".latency", "ms");
+            counters.put(prefix + ".errors", requestErrors.get(endpoint).get());
+        }
+        batchSizes.addTo(counters, "batch.size", "issues");
+        decodeTimes.addTo(counters, "decode.time", "ms");
+        counters.put("download.bytes", downloadedBytes.get());
+        counters.put("cache.issues.hits", issueLookups.get() - issueFetches.get());
+        counters.put("cache.issues.misses", issueFetches.get());
+        counters.put("errors.swallowed.batch", batchErrors.get());
+        counters.put("errors.swallowed.classification", classificationErrors.get());
+        for (Map.Entry<String, CacheStatistics> cache : caches.entrySet()) {
+            String prefix = "cache." + cache.getKey();
+            CacheStatistics statistics = cache.getValue();
+            counters.put(prefix + ".hits", statistics.getHitCount());
+            counters.put(prefix + ".misses", statistics.getMissCount());
+            counters.put(prefix + ".evictions", statistics.getEvictionCount());
+            counters.put(prefix + ".size", (long) statistics.getSize());
+        }
+        return counters;
+    }
+
+    @Override
+    public Map<String, String> getConnectionStatistics() {
+        Map<String, String> result = new TreeMap<String, String>();
+        for (Map.Entry<String, ConnectionStatistics> connection : connections.entrySet()) {
+            result.put(connection.getKey(), connection.getValue().toString());
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            requestLatencies.get(endpoint).reset();
+            requestErrors.get(endpoint).set(0);
+        }
+        batchSizes.reset();
+        decodeTimes.reset();
+        downloadedBytes.set(0);
+        issueLookups.set(0);
+        issueFetches.set(0);
+        batchErrors.set(0);
+        classificationErrors.set(0);
+        connections.clear();
+    }
+
+    /**
+     * The request statistics of one connection.
+     */
+    private static class ConnectionStatistics {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+
+        void record(long millis, boolean success) {
+            requests.incrementAndGet();
+            if (!success) {
+                errors.incrementAndGet();
+            }
+            totalMillis.addAndGet(millis);
+            long currentMax = maxMillis.get();
+            while ((millis > currentMax) && !maxMillis.compareAndSet(currentMax, millis)) {
+                currentMax = maxMillis.get();
+            }
+        }
+
+        @Override
+        public String toString() {
+            long requests = this.requests.get();
+            return format("requests=%d, errors=%d, averageMillis=%d, maxMillis=%d",
+                          requests, errors.get(), requests == 0 ? 0 : totalMillis.get() / requests, maxMillis.get());
+        }
+    }
+}
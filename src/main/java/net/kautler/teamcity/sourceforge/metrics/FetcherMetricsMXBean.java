@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of the metrics of the SourceForge issue fetching, as exposed over JMX.
+ */
+public interface FetcherMetricsMXBean {
+    /**
+     * Returns all counters, e.&nbsp;g. request counts and latency histograms per endpoint type, batch sizes,
+     * cache hits and misses, downloaded bytes, decode times and swallowed errors.
+     *
+     * @return the current values of all counters by their name, sorted by name
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Returns the request statistics of each connection, which identifies slow connections.
+     *
+     * @return a summary of the requests by project and ticket tool
+     */
+    Map<String, String> getConnectionStatistics();
+
+    /**
+     * Resets all counters and connection statistics, except the statistics of the caches.
+     */
+    void reset();
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jetbrains.annotations.NotNull;
+
+import static java.lang.String.format;
+
+/**
+ * A histogram of recorded values with fixed bucket bounds, that additionally tracks the count, sum and maximum.
+ */
+class Histogram {
+    private final long[] upperBounds;
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates a histogram with the specified inclusive upper bounds of the buckets.
+     * An additional bucket counts all values above the last bound.
+     *
+     * @param upperBounds the ascending inclusive upper bounds of the buckets
+     */
+    Histogram(@NotNull long... upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        bucketCounts = new AtomicLongArray(upperBounds.length + 1);
+    }
+
+    void record(long value) {
+        int bucket = 0;
+        while ((bucket < upperBounds.length) && (value > upperBounds[bucket])) {
+            bucket++;
+        }
+        bucketCounts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while ((value > currentMax) && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    void reset() {
+        for (int i = 0, j = bucketCounts.length(); i < j; i++) {
+            bucketCounts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Adds the values of this histogram to the specified counters, with the specified prefix and unit in their names.
+     *
+     * @param counters the counters to add the values to
+     * @param prefix   the prefix of the names of the counters
+     * @param unit     the unit of the recorded values, e.&nbsp;g. 'ms'
+     */
+    void addTo(@NotNull Map<String, Long> counters, @NotNull String prefix, @NotNull String unit) {
+        counters.put(prefix + ".count", count.get());
+        counters.put(format("%s.sum[%s]", prefix, unit), sum.get());
+        counters.put(format("%s.max[%s]", prefix, unit), max.get());
+        // the bounds are zero padded, so that the buckets are listed in order
+        for (int i = 0; i < upperBounds.length; i++) {
+            counters.put(format("%s.bucket.le%06d[%s]", prefix, upperBounds[i], unit), bucketCounts.get(i));
+        }
+        counters.put(format("%s.bucket.gt%06d[%s]", prefix, upperBounds[upperBounds.length - 1], unit), bucketCounts.get(upperBounds.length));
+    }
+}
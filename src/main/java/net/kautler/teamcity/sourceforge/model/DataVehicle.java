@@ -16,18 +16,26 @@
 
 package net.kautler.teamcity.sourceforge.model;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 import com.google.gson.Gson;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import net.kautler.teamcity.sourceforge.cache.BoundedCache;
+import net.kautler.teamcity.sourceforge.cache.CacheStatistics;
 
 /**
  * A vehicle to transport various data from the {@code IssueProvider} to the {@code IssueFetcher} in one {@code String}.
  * The data of this vehicle is represented as {@code JSON} string.
  */
 public class DataVehicle {
+    /**
+     * The name of the internal property that configures the maximum amount of cached connection settings.
+     */
+    public static final String CONNECTION_CACHE_MAX_SIZE_PROPERTY = "teamcity.sourceforge.connectionCache.maxSize";
+    /**
+     * The name of the internal property that configures the time in seconds after which cached connection settings expire.
+     */
+    public static final String CONNECTION_CACHE_TIME_TO_LIVE_PROPERTY = "teamcity.sourceforge.connectionCache.timeToLiveSeconds";
     private static final Gson GSON = new Gson();
-    private static Map<String, DataVehicle> cache = new ConcurrentHashMap<String, DataVehicle>();
+    private static final BoundedCache<String, DataVehicle> cache = createConnectionCache();
 
     private String project;
     private String ticketTool;
@@ -65,12 +73,7 @@ public class DataVehicle {
      * @return the project value of the given data vehicle
      */
     public static String getProject(String dataVehicleJson) {
-        if (cache.containsKey(dataVehicleJson)) {
-            return cache.get(dataVehicleJson).project;
-        }
-        DataVehicle dataVehicle = GSON.fromJson(dataVehicleJson, DataVehicle.class);
-        cache.put(dataVehicleJson, dataVehicle);
-        return dataVehicle.project;
+        return decode(dataVehicleJson).project;
     }
 
     /**
@@ -80,12 +83,7 @@ public class DataVehicle {
      * @return the ticket tool value of the given data vehicle
      */
     public static String getTicketTool(String dataVehicleJson) {
-        if (cache.containsKey(dataVehicleJson)) {
-            return cache.get(dataVehicleJson).ticketTool;
-        }
-        DataVehicle dataVehicle = GSON.fromJson(dataVehicleJson, DataVehicle.class);
-        cache.put(dataVehicleJson, dataVehicle);
-        return dataVehicle.ticketTool;
+        return decode(dataVehicleJson).ticketTool;
     }
 
     /**
@@ -95,12 +93,7 @@ public class DataVehicle {
      * @return the resolved query value of the given data vehicle
      */
     public static String getResolvedQuery(String dataVehicleJson) {
-        if (cache.containsKey(dataVehicleJson)) {
-            return cache.get(dataVehicleJson).resolvedQuery;
-        }
-        DataVehicle dataVehicle = GSON.fromJson(dataVehicleJson, DataVehicle.class);
-        cache.put(dataVehicleJson, dataVehicle);
-        return dataVehicle.resolvedQuery;
+        return decode(dataVehicleJson).resolvedQuery;
     }
 
     /**
@@ -110,12 +103,7 @@ public class DataVehicle {
      * @return the feature request query value of the given data vehicle
      */
     public static String getFeatureRequestQuery(String dataVehicleJson) {
-        if (cache.containsKey(dataVehicleJson)) {
-            return cache.get(dataVehicleJson).featureRequestQuery;
-        }
-        DataVehicle dataVehicle = GSON.fromJson(dataVehicleJson, DataVehicle.class);
-        cache.put(dataVehicleJson, dataVehicle);
-        return dataVehicle.featureRequestQuery;
+        return decode(dataVehicleJson).featureRequestQuery;
     }
 
     /**
@@ -125,12 +113,7 @@ public class DataVehicle {
      * @return the type value of the given data vehicle
      */
     public static String getType(String dataVehicleJson) {
-        if (cache.containsKey(dataVehicleJson)) {
-            return cache.get(dataVehicleJson).type;
-        }
-        DataVehicle dataVehicle = GSON.fromJson(dataVehicleJson, DataVehicle.class);
-        cache.put(dataVehicleJson, dataVehicle);
-        return dataVehicle.type;
+        return decode(dataVehicleJson).type;
     }
 
     /**
@@ -140,12 +123,7 @@ public class DataVehicle {
      * @return the priority value of the given data vehicle
      */
     public static String getPriority(String dataVehicleJson) {
-        if (cache.containsKey(dataVehicleJson)) {
-            return cache.get(dataVehicleJson).priority;
-        }
-        DataVehicle dataVehicle = GSON.fromJson(dataVehicleJson, DataVehicle.class);
-        cache.put(dataVehicleJson, dataVehicle);
-        return dataVehicle.priority;
+        return decode(dataVehicleJson).priority;
     }
 
     /**
@@ -155,11 +133,42 @@ public class DataVehicle {
      * @return the severity value of the given data vehicle
      */
     public static String getSeverity(String dataVehicleJson) {
-        if (cache.containsKey(dataVehicleJson)) {
-            return cache.get(dataVehicleJson).severity;
+        return decode(dataVehicleJson).severity;
+    }
+
+    /**
+     * Decodes the given {@code JSON} representation of a data vehicle, or returns the cached data vehicle for it.
+     *
+     * @param dataVehicleJson the {@code JSON} representation of a data vehicle
+     * @return the decoded data vehicle
+     */
+    private static DataVehicle decode(String dataVehicleJson) {
+        DataVehicle dataVehicle = cache.get(dataVehicleJson);
+        if (dataVehicle == null) {
+            dataVehicle = GSON.fromJson(dataVehicleJson, DataVehicle.class);
+            cache.put(dataVehicleJson, dataVehicle);
         }
-        DataVehicle dataVehicle = GSON.fromJson(dataVehicleJson, DataVehicle.class);
-        cache.put(dataVehicleJson, dataVehicle);
-        return dataVehicle.severity;
+        return dataVehicle;
+    }
+
+    /**
+     * Returns the statistics of the cache of decoded data vehicles.
+     *
+     * @return the statistics of the cache of decoded data vehicles
+     */
+    public static CacheStatistics getCacheStatistics() {
+        return cache;
+    }
+
+    /**
+     * Creates a cache that is keyed by the {@code JSON} representation of data vehicles
+     * and bounded according to the connection cache internal properties.
+     *
+     * @param <V> the type of the cached values
+     * @return the created cache
+     */
+    public static <V> BoundedCache<String, V> createConnectionCache() {
+        return new BoundedCache<String, V>(TeamCityProperties.getInteger(CONNECTION_CACHE_MAX_SIZE_PROPERTY, 500),
+                                           TeamCityProperties.getInteger(CONNECTION_CACHE_TIME_TO_LIVE_PROPERTY, 3600) * 1000L);
     }
 }
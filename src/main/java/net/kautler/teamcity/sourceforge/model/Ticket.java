@@ -19,6 +19,8 @@ package net.kautler.teamcity.sourceforge.model;
 import java.util.Collection;
 import java.util.Map;
 
+import static org.apache.commons.lang.StringUtils.join;
+
 /**
  * A SourceForge ticket as returned via the API with selected fields.
  */
@@ -30,6 +32,20 @@ public class Ticket {
     private int votes_down;
     private int votes_up;
     private Collection<String> labels;
+    private String mod_date;
+    private transient String joinedLabels;
+
+    Ticket(String status, String ticketNum, String summary, Map<String, String> customFields, int votesDown, int votesUp, Collection<String> labels,
+           String modDate) {
+        this.status = status;
+        this.ticket_num = ticketNum;
+        this.summary = summary;
+        this.custom_fields = customFields;
+        this.votes_down = votesDown;
+        this.votes_up = votesUp;
+        this.labels = labels;
+        this.mod_date = modDate;
+    }
 
     public String getStatus() {
         return status;
@@ -60,4 +76,28 @@ public class Ticket {
     public Collection<String> getLabels() {
         return labels;
     }
+
+    /**
+     * Returns the labels of this ticket joined together with commas.
+     * The labels are only joined when this is called for the first time, later calls return the same string.
+     *
+     * @return the joined labels of this ticket
+     */
+    public String getJoinedLabels() {
+        String joinedLabels = this.joinedLabels;
+        if (joinedLabels == null) {
+            joinedLabels = join(labels.iterator(), ", ");
+            this.joinedLabels = joinedLabels;
+        }
+        return joinedLabels;
+    }
+
+    /**
+     * Returns the time of the last modification of this ticket as returned by the API, e.&nbsp;g. '2015-06-01 19:50:08.123000'.
+     *
+     * @return the time of the last modification of this ticket
+     */
+    public String getModDate() {
+        return mod_date;
+    }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+import static net.kautler.teamcity.sourceforge.cache.Interner.intern;
+
+/**
+ * A streaming decoder for the SourceForge API responses that contain tickets.
+ * <p/>
+ * In contrast to decoding the whole response into {@link SearchResult} or {@link TicketWrapper}, only the fields that
+ * are declared in {@link Ticket} are decoded, all other fields like the description or the discussion thread are skipped,
+ * and the tickets are handed out one by one as soon as they are decoded. This way the memory needed for decoding a response
+ * only depends on the size of one ticket, not on the size of the whole response.
+ * <p/>
+ * The values that repeat across tickets, like the status, the labels and the custom fields, are interned,
+ * so that the decoded tickets share them instead of each holding its own copy.
+ */
+public class TicketStreamReader {
+    private TicketStreamReader() {
+    }
+
+    /**
+     * A handler that is called for each ticket that is decoded from a response.
+     */
+    public interface TicketHandler {
+        /**
+         * Handles a decoded ticket.
+         *
+         * @param ticket the decoded ticket
+         * @throws IOException if handling the ticket fails
+         */
+        void handle(Ticket ticket) throws IOException;
+    }
+
+    /**
+     * Decodes the tickets of a search result from the given {@code UTF-8} encoded stream
+     * and hands them to the given handler one by one.
+     *
+     * @param searchResultStream the stream containing the {@code JSON} representation of a search result
+     * @param handler            the handler to hand the decoded tickets to
+     * @return the total amount of tickets found by the search, independent of the requested page and limit
+     * @throws IOException if reading from the stream fails or the stream does not contain valid {@code JSON}
+     */
+    public static int readSearchResult(InputStream searchResultStream, TicketHandler handler) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(searchResultStream, "UTF-8"));
+        try {
+            int count = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("count") && (reader.peek() == JsonToken.NUMBER)) {
+                    count = reader.nextInt();
+                } else if (name.equals("tickets") && (reader.peek() != JsonToken.NULL)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        handler.handle(readTicket(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Decodes the wrapped ticket from the given {@code UTF-8} encoded stream.
+     *
+     * @param ticketWrapperStream the stream containing the {@code JSON} representation of a ticket wrapper
+     * @return the decoded ticket, or {@code null} if the wrapper does not contain a ticket
+     * @throws IOException if reading from the stream fails or the stream does not contain valid {@code JSON}
+     */
+    public static Ticket readTicketWrapper(InputStream ticketWrapperStream) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(ticketWrapperStream, "UTF-8"));
+        try {
+            Ticket ticket = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("ticket") && (reader.peek() != JsonToken.NULL)) {
+                    ticket = readTicket(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return ticket;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Decodes the ticket object at the current position of the given reader.
+     *
+     * @param reader the reader positioned at the start of a ticket object
+     * @return the decoded ticket
+     * @throws IOException if reading fails or the ticket object is not valid
+     */
+    private static Ticket readTicket(JsonReader reader) throws IOException {
+        String status = null;
+        String ticketNum = null;
+        String summary = null;
+        Map<String, String> customFields = new HashMap<String, String>();
+        int votesDown = 0;
+        int votesUp = 0;
+        List<String> labels = emptyList();
+        String modDate = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (name.equals("status")) {
+                status = intern(readString(reader));
+            } else if (name.equals("ticket_num")) {
+                ticketNum = readString(reader);
+            } else if (name.equals("summary")) {
+                summary = readString(reader);
+            } else if (name.equals("custom_fields")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    customFields.put(intern(reader.nextName()), intern(readString(reader)));
+                }
+                reader.endObject();
+            } else if (name.equals("votes_down")) {
+                votesDown = reader.nextInt();
+            } else if (name.equals("votes_up")) {
+                votesUp = reader.nextInt();
+            } else if (name.equals("labels")) {
+                ArrayList<String> readLabels = new ArrayList<String>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readLabels.add(intern(readString(reader)));
+                }
+                reader.endArray();
+                readLabels.trimToSize();
+                labels = unmodifiableList(readLabels);
+            } else if (name.equals("mod_date")) {
+                modDate = readString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Ticket(status, ticketNum, summary, customFields, votesDown, votesUp, labels, modDate);
+    }
+
+    /**
+     * Reads the primitive value at the current position of the given reader as string.
+     *
+     * @param reader the reader positioned at a primitive value
+     * @return the read value as string or {@code null} if the value is {@code null}
+     * @throws IOException if reading fails or the value is not primitive
+     */
+    private static String readString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+
+            default:
+                return reader.nextString();
+        }
+    }
+}
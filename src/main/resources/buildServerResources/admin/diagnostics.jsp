@@ -0,0 +1,56 @@
+<%@ include file="/include.jsp" %>
+
+<%--
+  ~ Copyright 2015 Björn Kautler
+  ~
+  ~ Licensed under the Apache License, Version 2.0 (the "License");
+  ~ you may not use this file except in compliance with the License.
+  ~ You may obtain a copy of the License at
+  ~
+  ~     http://www.apache.org/licenses/LICENSE-2.0
+  ~
+  ~ Unless required by applicable law or agreed to in writing, software
+  ~ distributed under the License is distributed on an "AS IS" BASIS,
+  ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  ~ See the License for the specific language governing permissions and
+  ~ limitations under the License.
+  --%>
+
+<jsp:useBean id="counters" scope="request" type="java.util.Map"/>
+<jsp:useBean id="connectionStatistics" scope="request" type="java.util.Map"/>
+<div>
+    <h2>Connections</h2>
+    <c:choose>
+        <c:when test="${empty connectionStatistics}">
+            <p>No requests were sent to SourceForge yet.</p>
+        </c:when>
+        <c:otherwise>
+            <table class="runnerFormTable">
+                <tr>
+                    <th>Project and ticket tool</th>
+                    <th>Requests</th>
+                </tr>
+                <c:forEach items="${connectionStatistics}" var="connection">
+                    <tr>
+                        <td><c:out value="${connection.key}"/></td>
+                        <td><c:out value="${connection.value}"/></td>
+                    </tr>
+                </c:forEach>
+            </table>
+        </c:otherwise>
+    </c:choose>
+
+    <h2>Counters</h2>
+    <table class="runnerFormTable">
+        <tr>
+            <th>Name</th>
+            <th>Value</th>
+        </tr>
+        <c:forEach items="${counters}" var="counter">
+            <tr>
+                <td><c:out value="${counter.key}"/></td>
+                <td><c:out value="${counter.value}"/></td>
+            </tr>
+        </c:forEach>
+    </table>
+</div>
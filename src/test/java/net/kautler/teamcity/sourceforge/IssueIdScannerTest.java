@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IssueIdScannerTest {
+    private static final String TEXT = "Fixed BUG #12 and bug #13, see Feature-7\nand feature-8 # not an issue";
+
+    @Test
+    public void combinesPatternsWithFlags() {
+        List<Pattern> patterns = asList(Pattern.compile("bug #(\\d+)", Pattern.CASE_INSENSITIVE),
+                                        Pattern.compile("^and feature-(\\d+)", Pattern.MULTILINE),
+                                        Pattern.compile("feature-(\\d+)  # the ticket number", Pattern.CASE_INSENSITIVE | Pattern.COMMENTS));
+        IssueIdScanner scanner = IssueIdScanner.forPatterns(patterns);
+
+        assertTrue(scanner.isCombined(0));
+        assertTrue(scanner.isCombined(1));
+        assertTrue(scanner.isCombined(2));
+        assertScannedAsAlone(patterns, scanner.scan(TEXT));
+        assertEquals(asList("12", "13"), scanner.scan(TEXT).get(0));
+        assertEquals(asList("8"), scanner.scan(TEXT).get(1));
+        assertEquals(asList("7", "8"), scanner.scan(TEXT).get(2));
+    }
+
+    @Test
+    public void scansPatternsWithoutInlineFlagsSeparately() {
+        List<Pattern> patterns = asList(Pattern.compile("bug #(\\d+)", Pattern.CASE_INSENSITIVE),
+                                        Pattern.compile("feature-(\\d+)", Pattern.CASE_INSENSITIVE),
+                                        Pattern.compile("#1", Pattern.LITERAL));
+        IssueIdScanner scanner = IssueIdScanner.forPatterns(patterns);
+
+        assertTrue(scanner.isCombined(0));
+        assertTrue(scanner.isCombined(1));
+        assertFalse(scanner.isCombined(2));
+        assertScannedAsAlone(patterns, scanner.scan(TEXT));
+    }
+
+    @Test
+    public void scansPatternsWithNamedGroupsSeparately() {
+        List<Pattern> patterns = asList(Pattern.compile("bug #(?<id>\\d+)", Pattern.CASE_INSENSITIVE),
+                                        Pattern.compile("feature-(?<id>\\d+)", Pattern.CASE_INSENSITIVE),
+                                        Pattern.compile("(?<hash>#)1\\k<hash>?", Pattern.CASE_INSENSITIVE),
+                                        Pattern.compile("bug #(\\d+)"),
+                                        Pattern.compile("(?<=and )feature-(\\d+)"));
+        IssueIdScanner scanner = IssueIdScanner.forPatterns(patterns);
+
+        assertFalse(scanner.isCombined(0));
+        assertFalse(scanner.isCombined(1));
+        assertFalse(scanner.isCombined(2));
+        assertTrue(scanner.isCombined(3));
+        assertTrue(scanner.isCombined(4));
+        assertScannedAsAlone(patterns, scanner.scan(TEXT));
+        assertEquals(asList("12", "13"), scanner.scan(TEXT).get(0));
+    }
+
+    private static void assertScannedAsAlone(List<Pattern> patterns, List<List<String>> issueIds) {
+        assertEquals(patterns.size(), issueIds.size());
+        for (int i = 0; i < patterns.size(); i++) {
+            assertEquals(IssueIdScanner.scan(patterns.get(i), TEXT), issueIds.get(i));
+        }
+    }
+}
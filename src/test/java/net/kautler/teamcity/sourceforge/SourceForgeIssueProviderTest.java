@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 Björn Kautler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.kautler.teamcity.sourceforge;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SourceForgeIssueProviderTest {
+    @Test
+    public void validatesResolvedQueryTrueAsSearchQuery() {
+        assertTrue(SourceForgeIssueProvider.isSearchQuery("resolvedQuery", "true"));
+        assertTrue(SourceForgeIssueProvider.isSearchQuery("resolvedQuery", "status:closed"));
+        assertFalse(SourceForgeIssueProvider.isSearchQuery("resolvedQuery", ""));
+        assertFalse(SourceForgeIssueProvider.isSearchQuery("resolvedQuery", null));
+    }
+
+    @Test
+    public void doesNotValidateFeatureRequestQueryTrue() {
+        assertFalse(SourceForgeIssueProvider.isSearchQuery("featureRequestQuery", "true"));
+        assertTrue(SourceForgeIssueProvider.isSearchQuery("featureRequestQuery", "labels:feature"));
+        assertFalse(SourceForgeIssueProvider.isSearchQuery("featureRequestQuery", ""));
+    }
+}